@@ -16,24 +16,166 @@
  */
 package org.apache.camel.jbit.agent;
 
+import java.io.IOException;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.camel.jbit.runtime.CallSiteCounters;
+import org.apache.camel.jbit.translate.ClassHierarchy;
+import org.apache.camel.jbit.translate.TranslationListener;
 import org.apache.camel.jbit.translate.Translator;
+import org.objectweb.asm.Opcodes;
 
 
 public class Agent implements ClassFileTransformer {
 
+    public static final String OBJECT_NAME = "org.apache.camel.jbit:type=Agent";
+
+    private final ClassFilter filter;
+    private final AgentMetrics metrics;
+    private final Translator translator;
+    private volatile TranslationCache cache;
+    // Class headers read to compute frames, shared by all the classes defined by a loader
+    private final Map<ClassLoader, ClassHierarchy> hierarchies = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public Agent(ClassFilter filter, TranslationCache cache) {
+        this(filter, cache, new AgentMetrics());
+    }
+
+    public Agent(ClassFilter filter, TranslationCache cache, AgentMetrics metrics) {
+        this(filter, cache, metrics, Translator.getDefault());
+    }
+
+    public Agent(ClassFilter filter, TranslationCache cache, AgentMetrics metrics, Translator translator) {
+        this.filter = filter;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.translator = translator;
+    }
+
     public static void premain(String agentArgs, Instrumentation inst) {
-        inst.addTransformer(new Agent());
+        AgentOptions options = AgentOptions.parse(agentArgs);
+        TranslationCache cache = null;
+        Translator translator = Translator.getDefault();
+        if (options.counters != null || options.inlineConcat) {
+            translator = Translator.builder()
+                    .countCalls(options.counters != null)
+                    .inlineConcat(options.inlineConcat)
+                    .build();
+        }
+        if (options.counters != null) {
+            // Call site IDs are only valid in this JVM, so counted classes can not be cached
+            if (options.cacheDirectory != null) {
+                System.err.println("jbit: translation cache disabled when counting calls");
+            }
+            CallSiteCounters.dumpOnExit("true".equals(options.counters) ? null : Paths.get(options.counters));
+        } else if (options.cacheDirectory != null) {
+            try {
+                TranslationCache opened = new TranslationCache(Paths.get(options.cacheDirectory), translator.getFingerprint());
+                // Records are appended in the background, write the last ones before exiting
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        opened.flush();
+                    } catch (IOException e) {
+                        System.err.println("jbit: unable to write translation cache: " + e);
+                    }
+                }, "jbit-translation-cache-flush"));
+                cache = opened;
+            } catch (IOException e) {
+                System.err.println("jbit: unable to open translation cache in " + options.cacheDirectory + ": " + e);
+            }
+        }
+        AgentMetrics metrics = new AgentMetrics();
+        if (options.jmx) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                System.err.println("jbit: unable to register " + OBJECT_NAME + ": " + e);
+            }
+        }
+        inst.addTransformer(new Agent(new ClassFilter(options), cache, metrics, translator));
     }
 
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
                             ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
-        return Translator.transform(classfileBuffer);
+        metrics.seen();
+        // Classes targeting JDK 8 or older are never rewritten, so avoid any parsing
+        if (classfileBuffer == null || classfileBuffer.length < 8 || getMajorVersion(classfileBuffer) <= Opcodes.V1_8
+                || !filter.accept(loader, className)) {
+            metrics.skipped();
+            return null;
+        }
+        long start = System.nanoTime();
+        byte[] result;
+        try {
+            TranslationCache cache = this.cache;
+            ClassHierarchy hierarchy = getHierarchy(loader);
+            result = cache != null ? transformCached(cache, classfileBuffer, hierarchy) : translator.doTransform(classfileBuffer, hierarchy, metrics);
+        } catch (RuntimeException e) {
+            metrics.failed();
+            // The JVM silently ignores exceptions thrown by transformers
+            System.err.println("jbit: unable to translate " + className + ": " + e);
+            throw e;
+        }
+        boolean changed = result != classfileBuffer;
+        metrics.translated(classfileBuffer.length, changed ? result.length : -1, System.nanoTime() - start);
+        // Returning null tells the JVM the class is unchanged
+        return changed ? result : null;
+    }
+
+    private ClassHierarchy getHierarchy(ClassLoader loader) {
+        if (loader == null) {
+            return ClassHierarchy.jdk();
+        }
+        return hierarchies.computeIfAbsent(loader, l -> new ClassHierarchy(ClassHierarchy.jdk(), ClassHierarchy.forClassLoader(l)));
+    }
+
+    private byte[] transformCached(TranslationCache cache, byte[] classfileBuffer, ClassHierarchy hierarchy) {
+        TranslationCache.Key key = TranslationCache.key(classfileBuffer);
+        try {
+            byte[] result = cache.get(key);
+            if (result != null) {
+                metrics.cacheHit();
+            } else {
+                boolean[] framesComputed = new boolean[1];
+                result = translator.doTransform(classfileBuffer, hierarchy, new TranslationListener() {
+                    @Override
+                    public void rewritten(String owner, String name, String descriptor) {
+                        metrics.rewritten(owner, name, descriptor);
+                    }
+
+                    @Override
+                    public void framesComputed(String className) {
+                        framesComputed[0] = true;
+                    }
+                });
+                // Computed frames depend on the classes visible from this loader, the key only identifies the class
+                if (result != classfileBuffer && !framesComputed[0]) {
+                    cache.put(key, result);
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            // Never fail class loading because of the cache, just stop using it
+            System.err.println("jbit: disabling translation cache: " + e);
+            this.cache = null;
+            return translator.doTransform(classfileBuffer, hierarchy, metrics);
+        }
+    }
+
+    static int getMajorVersion(byte[] classfileBuffer) {
+        return ((classfileBuffer[6] & 0xFF) << 8) | (classfileBuffer[7] & 0xFF);
     }
 
 }
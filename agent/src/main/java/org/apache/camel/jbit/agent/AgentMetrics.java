@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.camel.jbit.translate.TranslationListener;
+
+/**
+ * Counters of the agent activity, updated by all the class loading threads.
+ * All counters are striped {@link LongAdder}s, so that recording never serializes parallel class loading.
+ */
+public class AgentMetrics implements AgentMetricsMXBean, TranslationListener {
+
+    // Power of two ranges of nanoseconds, each split in 4 linear sub buckets
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder seen = new LongAdder();
+    private final LongAdder translated = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder translationTime = new LongAdder();
+    private final LongAccumulator maxTranslationTime = new LongAccumulator(Math::max, 0);
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+    private final ConcurrentMap<String, LongAdder> substitutions = new ConcurrentHashMap<>();
+
+    public AgentMetrics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void seen() {
+        seen.increment();
+    }
+
+    void skipped() {
+        skipped.increment();
+    }
+
+    void failed() {
+        failed.increment();
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Records a class submitted to the translator, with the result length or -1 if unchanged.
+     */
+    void translated(int lengthIn, int lengthOut, long nanos) {
+        if (lengthOut >= 0) {
+            translated.increment();
+            bytesOut.add(lengthOut);
+        } else {
+            skipped.increment();
+        }
+        bytesIn.add(lengthIn);
+        translationTime.add(nanos);
+        maxTranslationTime.accumulate(nanos);
+        histogram[bucket(nanos)].increment();
+    }
+
+    @Override
+    public void rewritten(String owner, String name, String descriptor) {
+        String key = owner + "." + name + descriptor;
+        LongAdder counter = substitutions.get(key);
+        if (counter == null) {
+            counter = substitutions.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest value of the given bucket.
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    long percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts[i];
+            if (count >= rank) {
+                return Math.min(bucketUpperBound(i), maxTranslationTime.get());
+            }
+        }
+        return maxTranslationTime.get();
+    }
+
+    @Override
+    public long getClassesSeen() {
+        return seen.sum();
+    }
+
+    @Override
+    public long getClassesTranslated() {
+        return translated.sum();
+    }
+
+    @Override
+    public long getClassesSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getClassesFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getTranslationTimeNanos() {
+        return translationTime.sum();
+    }
+
+    @Override
+    public long getTranslationTimeP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(percentile(0.50));
+    }
+
+    @Override
+    public long getTranslationTimeP90Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(percentile(0.90));
+    }
+
+    @Override
+    public long getTranslationTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(percentile(0.99));
+    }
+
+    @Override
+    public long getTranslationTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxTranslationTime.get());
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSubstitutionCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : substitutions.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+}
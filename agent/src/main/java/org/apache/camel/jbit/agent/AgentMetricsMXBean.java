@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.util.Map;
+
+/**
+ * Translation activity of the agent, registered as <code>org.apache.camel.jbit:type=Agent</code>.
+ */
+public interface AgentMetricsMXBean {
+
+    /**
+     * Number of classes given to the agent.
+     */
+    long getClassesSeen();
+
+    long getClassesTranslated();
+
+    /**
+     * Number of classes left untouched, because they target JDK 8 or older, are filtered out,
+     * or do not need any change.
+     */
+    long getClassesSkipped();
+
+    long getClassesFailed();
+
+    long getCacheHits();
+
+    long getTranslationTimeNanos();
+
+    long getTranslationTimeP50Micros();
+
+    long getTranslationTimeP90Micros();
+
+    long getTranslationTimeP99Micros();
+
+    long getTranslationTimeMaxMicros();
+
+    /**
+     * Size of the classes submitted to the translator.
+     */
+    long getBytesIn();
+
+    /**
+     * Size of the translated classes.
+     */
+    long getBytesOut();
+
+    /**
+     * Number of rewritten call sites per original method, for the classes translated since startup,
+     * excluding the classes found in the translation cache.
+     */
+    Map<String, Long> getSubstitutionCounts();
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Options given to the agent on the command line, as a comma separated list of <code>key=value</code> pairs:
+ * <pre>
+ *   -javaagent:agent.jar=include=com.acme,exclude=com.acme.generated,exclude-loader=bootstrap
+ * </pre>
+ * Supported keys are:
+ * <ul>
+ *   <li><code>include</code>: a package prefix to translate, may be repeated (default: all packages)</li>
+ *   <li><code>exclude</code>: a package prefix to leave untouched, may be repeated</li>
+ *   <li><code>exclude-loader</code>: <code>bootstrap</code>, <code>platform</code> or the class name
+ *       of a class loader whose classes are left untouched, may be repeated</li>
+ *   <li><code>cache</code>: a directory where translated classes are persisted across JVM runs,
+ *       which can be shared by several JVMs</li>
+ *   <li><code>jmx</code>: <code>false</code> to not register the agent metrics MBean (default: <code>true</code>)</li>
+ *   <li><code>counters</code>: <code>true</code> to count the calls to the substituted methods and print them to the
+ *       standard error when the JVM exits, or the file to write them to</li>
+ *   <li><code>inline-concat</code>: <code>true</code> to translate string concatenations into <code>StringBuilder</code>
+ *       code instead of linking them at runtime (default: <code>false</code>)</li>
+ * </ul>
+ * When a class matches both an include and an exclude prefix, the longest prefix wins.
+ */
+public class AgentOptions {
+
+    public static final String BOOTSTRAP_LOADER = "bootstrap";
+    public static final String PLATFORM_LOADER = "platform";
+
+    final List<String> includes = new ArrayList<>();
+    final List<String> excludes = new ArrayList<>();
+    final List<String> excludedLoaders = new ArrayList<>();
+    String cacheDirectory;
+    boolean jmx = true;
+    String counters;
+    boolean inlineConcat;
+
+    public static AgentOptions parse(String agentArgs) {
+        AgentOptions options = new AgentOptions();
+        if (agentArgs == null || agentArgs.trim().isEmpty()) {
+            return options;
+        }
+        for (String arg : agentArgs.split(",")) {
+            arg = arg.trim();
+            if (arg.isEmpty()) {
+                continue;
+            }
+            int idx = arg.indexOf('=');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid agent option: " + arg);
+            }
+            String key = arg.substring(0, idx).trim();
+            String value = arg.substring(idx + 1).trim();
+            switch (key) {
+                case "include":
+                    options.includes.add(value);
+                    break;
+                case "exclude":
+                    options.excludes.add(value);
+                    break;
+                case "exclude-loader":
+                    options.excludedLoaders.add(value);
+                    break;
+                case "cache":
+                    options.cacheDirectory = value;
+                    break;
+                case "jmx":
+                    options.jmx = Boolean.parseBoolean(value);
+                    break;
+                case "inline-concat":
+                    options.inlineConcat = Boolean.parseBoolean(value);
+                    break;
+                case "counters":
+                    options.counters = "false".equals(value) ? null : value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown agent option: " + key);
+            }
+        }
+        return options;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Decides which classes are handed to the translator, based on the
+ * package prefixes and class loaders configured in {@link AgentOptions}.
+ */
+public class ClassFilter {
+
+    private final PrefixTrie<Boolean> packages = new PrefixTrie<>();
+    private final boolean defaultInclude;
+    private final boolean excludeBootstrap;
+    private final ClassLoader excludedPlatformLoader;
+    private final Set<String> excludedLoaders = new HashSet<>();
+
+    public ClassFilter(AgentOptions options) {
+        for (String include : options.includes) {
+            packages.put(toInternalName(include), Boolean.TRUE);
+        }
+        for (String exclude : options.excludes) {
+            packages.put(toInternalName(exclude), Boolean.FALSE);
+        }
+        this.defaultInclude = options.includes.isEmpty();
+        boolean excludeBootstrap = false;
+        ClassLoader excludedPlatformLoader = null;
+        for (String loader : options.excludedLoaders) {
+            if (AgentOptions.BOOTSTRAP_LOADER.equals(loader)) {
+                excludeBootstrap = true;
+            } else if (AgentOptions.PLATFORM_LOADER.equals(loader)) {
+                // the extension class loader on JDK 8, the platform class loader on JDK 9+
+                excludedPlatformLoader = ClassLoader.getSystemClassLoader().getParent();
+            } else {
+                excludedLoaders.add(loader);
+            }
+        }
+        this.excludeBootstrap = excludeBootstrap;
+        this.excludedPlatformLoader = excludedPlatformLoader;
+    }
+
+    /**
+     * @param loader the defining class loader, <code>null</code> for the bootstrap loader
+     * @param className the internal name of the class, may be <code>null</code>
+     * @return <code>true</code> if the class should be translated
+     */
+    public boolean accept(ClassLoader loader, String className) {
+        if (loader == null) {
+            if (excludeBootstrap) {
+                return false;
+            }
+        } else if (loader == excludedPlatformLoader
+                || (!excludedLoaders.isEmpty() && excludedLoaders.contains(loader.getClass().getName()))) {
+            return false;
+        }
+        if (className == null || packages.isEmpty()) {
+            return defaultInclude;
+        }
+        Boolean match = packages.longestPrefix(className);
+        return match != null ? match : defaultInclude;
+    }
+
+    private static String toInternalName(String pkg) {
+        String name = pkg.replace('.', '/');
+        return name.endsWith("/") ? name : name + "/";
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.util.Arrays;
+
+/**
+ * A character trie mapping prefixes to a value.
+ * Lookups return the value of the longest prefix of the given string and do not allocate.
+ */
+final class PrefixTrie<T> {
+
+    private final Node<T> root = new Node<>();
+
+    void put(String prefix, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrCreate(prefix.charAt(i));
+        }
+        node.value = value;
+    }
+
+    /**
+     * Returns the value associated with the longest prefix of <code>str</code>,
+     * or <code>null</code> if no prefix matches.
+     */
+    T longestPrefix(String str) {
+        Node<T> node = root;
+        T value = node.value;
+        for (int i = 0; i < str.length() && node != null; i++) {
+            node = node.get(str.charAt(i));
+            if (node != null && node.value != null) {
+                value = node.value;
+            }
+        }
+        return value;
+    }
+
+    boolean isEmpty() {
+        return root.size == 0 && root.value == null;
+    }
+
+    private static final class Node<T> {
+        char[] keys = new char[0];
+        Node<T>[] children = newArray(0);
+        int size;
+        T value;
+
+        Node<T> get(char c) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node<T> getOrCreate(char c) {
+            Node<T> node = get(c);
+            if (node == null) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2 + 1);
+                    children = Arrays.copyOf(children, size * 2 + 1);
+                }
+                node = new Node<>();
+                keys[size] = c;
+                children[size] = node;
+                size++;
+            }
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] newArray(int size) {
+            return (Node<T>[]) new Node<?>[size];
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of translated classes, shared by all JVMs using the same directory.
+ * <p>
+ * Translated classes are stored in a single append-only file named after the translator
+ * fingerprint, so that results produced by a different set of substitutions or a different
+ * jbit build are never reused. Each record is made of:
+ * <pre>
+ *   int    magic
+ *   byte[] key (16 bytes, truncated SHA-256 of the input class)
+ *   int    data length
+ *   int    CRC32 of the data
+ *   byte[] data
+ * </pre>
+ * The file grows by fixed-size windows, which are sparse until written and memory-mapped
+ * once each, so hits are served without any parsing or remapping. Records never span two
+ * windows: a padding marker, or a tail too small for a header, moves to the next window.
+ * <p>
+ * Readers never lock: a record is only indexed once it is complete and its checksum matches,
+ * and the index is refreshed on a miss, only if a record follows the last indexed one, to pick
+ * up records appended by other JVMs. {@link #put} only queues the record: a background thread
+ * appends the queued records in batches, under an exclusive file lock serializing appends across
+ * JVMs. Appends start at the first invalid record, overwriting anything left by a JVM which died
+ * while appending, and are followed by an empty marker when the window has room for it.
+ */
+public class TranslationCache {
+
+    static final int WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A424954;
+    private static final int PADDING = 0x4A424950;
+    private static final int KEY_SIZE = 16;
+    private static final int HEADER_SIZE = 4 + KEY_SIZE + 4 + 4;
+    private static final long MAX_SIZE = 1L << 31;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final Key CLOSE = new Key(0, 0);
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final Map<Key, Long> index = new ConcurrentHashMap<>();
+    private final Map<Key, byte[]> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Key> queue = new LinkedBlockingQueue<>();
+    // Guards scans and the windows, never waited for on the class loading path
+    private final ReentrantLock scanLock = new ReentrantLock();
+    private final Object writeLock = new Object();
+    private final Thread writer;
+    private volatile MappedByteBuffer[] windows = new MappedByteBuffer[0];
+    private volatile long indexed;
+    private volatile boolean writable = true;
+
+    public TranslationCache(Path directory, String fingerprint) throws IOException {
+        this(Files.createDirectories(directory).resolve("jbit-" + fingerprint + ".cache"), WINDOW_SIZE);
+    }
+
+    TranslationCache(Path file, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scanLock.lock();
+        try {
+            scan();
+        } finally {
+            scanLock.unlock();
+        }
+        this.writer = new Thread(this::writeLoop, "jbit-translation-cache");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static Key key(byte[] classData) {
+        byte[] digest = DIGEST.get().digest(classData);
+        return new Key(ByteBuffer.wrap(digest).getLong(), ByteBuffer.wrap(digest).getLong(8));
+    }
+
+    /**
+     * Returns the cached translation for the given key, or <code>null</code>.
+     */
+    public byte[] get(Key key) throws IOException {
+        byte[] queued = pending.get(key);
+        if (queued != null) {
+            return queued;
+        }
+        Long offset = index.get(key);
+        if (offset == null && refresh()) {
+            offset = index.get(key);
+        }
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer buf = windows[(int) (offset / windowSize)].duplicate();
+        int position = (int) (offset % windowSize);
+        buf.position(position + 4 + KEY_SIZE);
+        byte[] data = new byte[buf.getInt()];
+        buf.position(position + HEADER_SIZE);
+        buf.get(data);
+        return data;
+    }
+
+    /**
+     * Queues the given translation to be appended by the background thread.
+     */
+    public void put(Key key, byte[] data) {
+        if (writable && !index.containsKey(key) && HEADER_SIZE + data.length <= windowSize
+                && pending.putIfAbsent(key, data) == null) {
+            queue.offer(key);
+        }
+    }
+
+    /**
+     * Appends all the queued translations.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Map.Entry<Key, byte[]>> batch = new ArrayList<>(pending.entrySet());
+            scanLock.lock();
+            try (FileLock lock = channel.lock()) {
+                scan();
+                append(batch);
+                scan();
+            } finally {
+                scanLock.unlock();
+            }
+            for (Map.Entry<Key, byte[]> entry : batch) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Appends the queued translations and closes the file.
+     */
+    public void close() throws IOException {
+        queue.offer(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (writable) {
+                flush();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (queue.take() != CLOSE) {
+                // Records queued meanwhile are written by the same flush, the queue only wakes us up
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("jbit: disabling translation cache writes: " + e);
+            writable = false;
+            pending.clear();
+        }
+    }
+
+    private void append(List<Map.Entry<Key, byte[]>> batch) throws IOException {
+        long position = indexed;
+        for (Map.Entry<Key, byte[]> entry : batch) {
+            Key key = entry.getKey();
+            byte[] data = entry.getValue();
+            if (index.containsKey(key)) {
+                continue;
+            }
+            int size = HEADER_SIZE + data.length;
+            int offset = (int) (position % windowSize);
+            if (offset + size > windowSize) {
+                if (offset + HEADER_SIZE <= windowSize) {
+                    write(ByteBuffer.allocate(4).putInt(0, PADDING), position);
+                }
+                position += windowSize - offset;
+                offset = 0;
+            }
+            long windowEnd = position - offset + windowSize;
+            if (windowEnd > MAX_SIZE) {
+                return;
+            }
+            if (channel.size() < windowEnd) {
+                write(ByteBuffer.allocate(1), windowEnd - 1);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            boolean marker = offset + size + 4 <= windowSize;
+            ByteBuffer record = ByteBuffer.allocate(size + (marker ? 4 : 0));
+            record.putInt(MAGIC).putLong(key.high).putLong(key.low).putInt(data.length).putInt((int) crc.getValue()).put(data);
+            // The empty marker ends the records, whatever a dead JVM left after them
+            record.position(0);
+            write(record, position);
+            position += size;
+        }
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /**
+     * Indexes records appended since the last scan, unless another thread is already scanning.
+     * @return <code>true</code> if new records have been found
+     */
+    private boolean refresh() throws IOException {
+        if (!hasNewRecord() || !scanLock.tryLock()) {
+            return false;
+        }
+        try {
+            long before = indexed;
+            scan();
+            return indexed != before;
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /**
+     * Checks, without locking, whether something follows the last indexed record.
+     */
+    private boolean hasNewRecord() throws IOException {
+        long position = indexed;
+        int window = (int) (position / windowSize);
+        int offset = (int) (position % windowSize);
+        if (offset + HEADER_SIZE > windowSize) {
+            window++;
+            offset = 0;
+        }
+        MappedByteBuffer[] mapped = windows;
+        if (window >= mapped.length) {
+            return channel.size() >= (long) (window + 1) * windowSize;
+        }
+        int magic = mapped[window].getInt(offset);
+        return magic == MAGIC || magic == PADDING;
+    }
+
+    private MappedByteBuffer window(int window) throws IOException {
+        MappedByteBuffer[] mapped = windows;
+        if (window < mapped.length) {
+            return mapped[window];
+        }
+        long start = (long) window * windowSize;
+        if (start + windowSize > MAX_SIZE || channel.size() < start + windowSize) {
+            return null;
+        }
+        mapped = Arrays.copyOf(mapped, window + 1);
+        for (int i = windows.length; i <= window; i++) {
+            mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, (long) i * windowSize, windowSize);
+        }
+        // Publish the new windows before any record they contain is indexed
+        windows = mapped;
+        return mapped[window];
+    }
+
+    private void scan() throws IOException {
+        long position = indexed;
+        CRC32 crc = new CRC32();
+        while (true) {
+            int offset = (int) (position % windowSize);
+            if (offset + HEADER_SIZE > windowSize) {
+                position += windowSize - offset;
+                continue;
+            }
+            MappedByteBuffer window = window((int) (position / windowSize));
+            if (window == null) {
+                break;
+            }
+            ByteBuffer record = window.duplicate();
+            record.position(offset);
+            int magic = record.getInt();
+            if (magic == PADDING) {
+                position += windowSize - offset;
+                continue;
+            }
+            if (magic != MAGIC) {
+                break;
+            }
+            Key key = new Key(record.getLong(), record.getLong());
+            int length = record.getInt();
+            int checksum = record.getInt();
+            if (length < 0 || offset + HEADER_SIZE + (long) length > windowSize) {
+                break;
+            }
+            record.limit(offset + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            index.putIfAbsent(key, position);
+            position += HEADER_SIZE + length;
+        }
+        indexed = position;
+    }
+
+    public static final class Key {
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.nio.file.Path;
+
+import org.apache.camel.jbit.translate.Translator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AgentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testComputedFramesNotCached() throws Exception {
+        // Frames are computed for every rewritten class, and kept when the class is only upgraded
+        Translator translator = Translator.builder().preserveFrames(false).build();
+        TranslationCache cache = new TranslationCache(dir.resolve("test.cache"), TranslationCache.WINDOW_SIZE);
+        try {
+            Agent agent = new Agent(new ClassFilter(AgentOptions.parse(null)), cache, new AgentMetrics(), translator);
+            byte[] rewritten = generate("test/Rewritten", true);
+            byte[] upgraded = generate("test/Upgraded", false);
+            assertNotNull(agent.transform(getClass().getClassLoader(), "test/Rewritten", null, null, rewritten));
+            assertNotNull(agent.transform(getClass().getClassLoader(), "test/Upgraded", null, null, upgraded));
+            cache.flush();
+            assertNull(cache.get(TranslationCache.key(rewritten)));
+            assertNotNull(cache.get(TranslationCache.key(upgraded)));
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * Generates a JDK 11 class, calling <code>Map.of</code> which is substituted if <code>rewrite</code> is set.
+     */
+    private static byte[] generate(String name, boolean rewrite) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "map", "()Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        if (rewrite) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Map", "of", "()Ljava/util/Map;", true);
+        } else {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        }
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+}
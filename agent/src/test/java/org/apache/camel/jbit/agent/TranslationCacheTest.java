@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.agent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TranslationCacheTest {
+
+    static final int WINDOW_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSharedFile() throws IOException {
+        Path file = dir.resolve("test.cache");
+        TranslationCache first = new TranslationCache(file, WINDOW_SIZE);
+        TranslationCache second = new TranslationCache(file, WINDOW_SIZE);
+        try {
+            byte[][] data = new byte[10][];
+            TranslationCache.Key[] keys = new TranslationCache.Key[data.length];
+            for (int i = 0; i < data.length; i++) {
+                // Large enough for records to move to the next window
+                data[i] = bytes("class " + i, 1000 + i);
+                keys[i] = TranslationCache.key(("class " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < data.length; i += 2) {
+                first.put(keys[i], data[i]);
+            }
+            first.flush();
+            for (int i = 1; i < data.length; i += 2) {
+                assertNull(second.get(keys[i]));
+                second.put(keys[i], data[i]);
+            }
+            second.flush();
+            for (int i = 0; i < data.length; i++) {
+                assertArrayEquals(data[i], first.get(keys[i]));
+                assertArrayEquals(data[i], second.get(keys[i]));
+            }
+        } finally {
+            first.close();
+            second.close();
+        }
+        TranslationCache third = new TranslationCache(file, WINDOW_SIZE);
+        try {
+            assertArrayEquals(bytes("class 9", 1009), third.get(TranslationCache.key("class 9".getBytes(StandardCharsets.UTF_8))));
+        } finally {
+            third.close();
+        }
+    }
+
+    @Test
+    public void testPartialRecord() throws IOException {
+        Path file = dir.resolve("test.cache");
+        TranslationCache.Key key1 = TranslationCache.key(new byte[] { 1 });
+        TranslationCache.Key key2 = TranslationCache.key(new byte[] { 2 });
+        TranslationCache.Key key3 = TranslationCache.key(new byte[] { 3 });
+        TranslationCache cache = new TranslationCache(file, WINDOW_SIZE);
+        cache.put(key1, bytes("one", 100));
+        cache.close();
+
+        // Simulate a JVM dying while appending a record after the first one
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer partial = ByteBuffer.allocate(28 + 50);
+            partial.putInt(0x4A424954).putLong(0).putLong(0).putInt(500).putInt(0).put(bytes("dead", 50));
+            partial.flip();
+            channel.write(partial, 28 + 100);
+        }
+
+        cache = new TranslationCache(file, WINDOW_SIZE);
+        try {
+            assertArrayEquals(bytes("one", 100), cache.get(key1));
+            cache.put(key2, bytes("two", 10));
+            cache.flush();
+        } finally {
+            cache.close();
+        }
+        cache = new TranslationCache(file, WINDOW_SIZE);
+        try {
+            assertArrayEquals(bytes("one", 100), cache.get(key1));
+            assertArrayEquals(bytes("two", 10), cache.get(key2));
+            assertNull(cache.get(key3));
+            cache.put(key3, bytes("three", 20));
+            cache.flush();
+            assertArrayEquals(bytes("three", 20), cache.get(key3));
+        } finally {
+            cache.close();
+        }
+    }
+
+    private static byte[] bytes(String seed, int length) {
+        byte[] data = new byte[length];
+        byte[] s = seed.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (s[i % s.length] + i);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates JDK 11 class files with the shapes commonly found in translated jars,
+ * the same way javac 11 would compile them.
+ */
+public enum ClassShapes {
+
+    /**
+     * A small bean with a few fields, accessors and a <code>toString</code> using indy string concatenation.
+     */
+    POJO {
+        @Override
+        void generate(ClassWriter cw, String name) {
+            String[][] fields = {{"id", "J"}, {"name", "Ljava/lang/String;"}, {"count", "I"}, {"enabled", "Z"}};
+            for (String[] field : fields) {
+                cw.visitField(Opcodes.ACC_PRIVATE, field[0], field[1], null, null).visitEnd();
+                accessors(cw, name, field[0], field[1]);
+            }
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null);
+            mv.visitCode();
+            StringBuilder recipe = new StringBuilder(name.substring(name.lastIndexOf('/') + 1)).append('[');
+            StringBuilder descriptor = new StringBuilder("(");
+            for (String[] field : fields) {
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, name, field[0], field[1]);
+                recipe.append(field[0]).append("=\u0001, ");
+                descriptor.append(field[1]);
+            }
+            recipe.setLength(recipe.length() - 2);
+            recipe.append(']');
+            mv.visitInvokeDynamicInsn("makeConcatWithConstants", descriptor + ")Ljava/lang/String;", CONCAT_HANDLE, recipe.toString());
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+    },
+
+    /**
+     * A large class such as produced by code generators: many methods with branches,
+     * some of them calling JDK 9+ methods which are substituted.
+     */
+    GENERATED {
+        @Override
+        void generate(ClassWriter cw, String name) {
+            for (int i = 0; i < 200; i++) {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m" + i, "(ILjava/lang/String;)Ljava/lang/Object;", null, null);
+                mv.visitCode();
+                Label other = new Label();
+                mv.visitVarInsn(Opcodes.ILOAD, 0);
+                mv.visitLdcInsn(i);
+                mv.visitJumpInsn(Opcodes.IF_ICMPLT, other);
+                if (i % 4 == 0) {
+                    mv.visitVarInsn(Opcodes.ALOAD, 1);
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "isBlank", "()Z", false);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", false);
+                } else if (i % 4 == 1) {
+                    mv.visitVarInsn(Opcodes.ALOAD, 1);
+                    mv.visitVarInsn(Opcodes.ALOAD, 1);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/List", "of", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/util/List;", true);
+                } else {
+                    mv.visitVarInsn(Opcodes.ILOAD, 0);
+                    mv.visitIntInsn(Opcodes.SIPUSH, i * 31);
+                    mv.visitInsn(Opcodes.IMUL);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+                }
+                mv.visitInsn(Opcodes.ARETURN);
+                mv.visitLabel(other);
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitInsn(Opcodes.ARETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+        }
+    },
+
+    /**
+     * A class building many messages with indy string concatenation.
+     */
+    CONCAT {
+        @Override
+        void generate(ClassWriter cw, String name) {
+            for (int i = 0; i < 50; i++) {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "message" + i, "(Ljava/lang/String;IJ)Ljava/lang/String;", null, null);
+                mv.visitCode();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitVarInsn(Opcodes.LLOAD, 2);
+                mv.visitInvokeDynamicInsn("makeConcatWithConstants", "(Ljava/lang/String;IJ)Ljava/lang/String;", CONCAT_HANDLE,
+                        "message " + i + ": \u0001 failed after \u0001 attempts in \u0001 ms");
+                mv.visitInsn(Opcodes.ARETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+        }
+    },
+
+    /**
+     * A class without anything to translate, only its version is changed.
+     */
+    UNCHANGED {
+        @Override
+        void generate(ClassWriter cw, String name) {
+            for (int i = 0; i < 20; i++) {
+                MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "sum" + i, "([I)I", null, null);
+                mv.visitCode();
+                Label loop = new Label();
+                Label end = new Label();
+                mv.visitInsn(Opcodes.ICONST_0);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+                mv.visitInsn(Opcodes.ICONST_0);
+                mv.visitVarInsn(Opcodes.ISTORE, 2);
+                mv.visitLabel(loop);
+                mv.visitVarInsn(Opcodes.ILOAD, 2);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitInsn(Opcodes.ARRAYLENGTH);
+                mv.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ILOAD, 2);
+                mv.visitInsn(Opcodes.IALOAD);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitVarInsn(Opcodes.ISTORE, 1);
+                mv.visitIincInsn(2, 1);
+                mv.visitJumpInsn(Opcodes.GOTO, loop);
+                mv.visitLabel(end);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitInsn(Opcodes.IRETURN);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+            }
+        }
+    };
+
+    static final Handle CONCAT_HANDLE = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory", "makeConcatWithConstants",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    abstract void generate(ClassWriter cw, String name);
+
+    /**
+     * Returns the class file of a class with this shape and the given internal name.
+     */
+    public byte[] create(String name) {
+        // Only primitives, strings and java/lang/Object are merged, so frames can be computed without loading classes
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        generate(cw, name);
+        if (this == POJO || this == CONCAT) {
+            cw.visitInnerClass("java/lang/invoke/MethodHandles$Lookup", "java/lang/invoke/MethodHandles", "Lookup",
+                    Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void accessors(ClassWriter cw, String owner, String field, String descriptor) {
+        String suffix = Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        Type type = Type.getType(descriptor);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "get" + suffix, "()" + descriptor, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, owner, field, descriptor);
+        mv.visitInsn(type.getOpcode(Opcodes.IRETURN));
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "set" + suffix, "(" + descriptor + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), 1);
+        mv.visitFieldInsn(Opcodes.PUTFIELD, owner, field, descriptor);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+}
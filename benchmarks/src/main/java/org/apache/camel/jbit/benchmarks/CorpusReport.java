@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.camel.jbit.translate.ClassHierarchy;
+import org.apache.camel.jbit.translate.Translator;
+
+/**
+ * Translates all the jars found in a directory, such as a local Maven repository, without writing
+ * any output, and prints a JSON report: per jar and total throughput, peak heap, slowest classes,
+ * rewritten call sites per substituted method, and classes skipped, only upgraded or rewritten.
+ * <p>
+ * Classes are translated sequentially so that their timings are not skewed by contention.
+ * Reading the jars is not included in the timings.
+ */
+public final class CorpusReport {
+
+    private final int top;
+    private final Map<String, Long> substitutions = new TreeMap<>();
+    private final PriorityQueue<ClassTiming> slowest = new PriorityQueue<>((c1, c2) -> Long.compare(c1.nanos, c2.nanos));
+    private final List<String> failures = new ArrayList<>();
+    private final List<JarStats> jars = new ArrayList<>();
+
+    private CorpusReport(int top) {
+        this.top = top;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = null;
+        Path output = null;
+        int top = 20;
+        int warmup = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--output".equals(arg) && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else if ("--top".equals(arg) && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(arg) && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (arg.startsWith("--") || directory != null) {
+                usage();
+                return;
+            } else {
+                directory = Paths.get(arg);
+            }
+        }
+        if (directory == null) {
+            usage();
+            return;
+        }
+        List<Path> jars;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            jars = stream.filter(p -> p.getFileName().toString().endsWith(".jar") && Files.isRegularFile(p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < warmup; i++) {
+            new CorpusReport(top).run(jars);
+        }
+        CorpusReport report = new CorpusReport(top);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        report.run(jars);
+        long wallNanos = System.nanoTime() - start;
+        try (Writer writer = output != null
+                ? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+                : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            PrintWriter out = new PrintWriter(writer);
+            report.write(out, directory, wallNanos, peakHeap());
+            out.flush();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("USAGE: CorpusReport [options] <directory>");
+        System.err.println("  --output <file>  write the JSON report to the given file (default: standard output)");
+        System.err.println("  --top <n>        number of slowest classes reported (default: 20)");
+        System.err.println("  --warmup <n>     number of untimed passes over the corpus before the measured one (default: 0)");
+    }
+
+    private void run(List<Path> jars) {
+        for (Path jar : jars) {
+            try {
+                this.jars.add(translate(jar));
+            } catch (IOException e) {
+                failures.add(jar + ": " + e);
+            }
+        }
+    }
+
+    private JarStats translate(Path jar) throws IOException {
+        JarStats stats = new JarStats(jar);
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            ClassHierarchy hierarchy = new ClassHierarchy(ClassHierarchy.jdk(), name -> {
+                ZipEntry entry = zip.getEntry(name + ".class");
+                return entry != null ? read(zip, entry) : null;
+            });
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                byte[] data = read(zip, entry);
+                int[] rewritten = new int[1];
+                long start = System.nanoTime();
+                byte[] result;
+                try {
+                    result = Translator.transform(data, hierarchy, (owner, name, descriptor) -> {
+                        rewritten[0]++;
+                        substitutions.merge(owner + "." + name + descriptor, 1L, Long::sum);
+                    });
+                } catch (RuntimeException e) {
+                    stats.failed++;
+                    failures.add(jar.getFileName() + "!" + entry.getName() + ": " + e);
+                    continue;
+                }
+                long nanos = System.nanoTime() - start;
+                stats.nanos += nanos;
+                stats.classes++;
+                stats.bytes += data.length;
+                if (result == data) {
+                    stats.skipped++;
+                } else if (rewritten[0] == 0) {
+                    stats.upgraded++;
+                } else {
+                    stats.rewritten++;
+                }
+                slowest.add(new ClassTiming(jar.getFileName() + "!" + entry.getName(), data.length, nanos));
+                if (slowest.size() > top) {
+                    slowest.poll();
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private void write(PrintWriter out, Path directory, long wallNanos, long peakHeap) {
+        JarStats total = new JarStats(directory);
+        for (JarStats jar : jars) {
+            total.add(jar);
+        }
+        out.println("{");
+        out.println("  \"directory\": " + quote(directory.toString()) + ",");
+        out.println("  \"java\": " + quote(System.getProperty("java.version")) + ",");
+        out.println("  \"jbit\": " + quote(Translator.fingerprint()) + ",");
+        out.println("  \"wallMillis\": " + wallNanos / 1_000_000 + ",");
+        out.println("  \"peakHeapBytes\": " + peakHeap + ",");
+        out.println("  \"total\": " + total.toJson() + ",");
+        out.println("  \"jars\": [");
+        for (int i = 0; i < jars.size(); i++) {
+            out.println("    " + jars.get(i).toJson() + (i < jars.size() - 1 ? "," : ""));
+        }
+        out.println("  ],");
+        List<ClassTiming> classes = new ArrayList<>(slowest);
+        classes.sort((c1, c2) -> Long.compare(c2.nanos, c1.nanos));
+        out.println("  \"slowestClasses\": [");
+        for (int i = 0; i < classes.size(); i++) {
+            ClassTiming c = classes.get(i);
+            out.println("    {\"class\": " + quote(c.name) + ", \"bytes\": " + c.bytes + ", \"micros\": " + c.nanos / 1000 + "}"
+                    + (i < classes.size() - 1 ? "," : ""));
+        }
+        out.println("  ],");
+        out.println("  \"substitutions\": {");
+        int i = 0;
+        for (Map.Entry<String, Long> substitution : substitutions.entrySet()) {
+            out.println("    " + quote(substitution.getKey()) + ": " + substitution.getValue()
+                    + (++i < substitutions.size() ? "," : ""));
+        }
+        out.println("  },");
+        out.println("  \"failures\": [");
+        for (i = 0; i < failures.size(); i++) {
+            out.println("    " + quote(failures.get(i)) + (i < failures.size() - 1 ? "," : ""));
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class ClassTiming {
+        final String name;
+        final int bytes;
+        final long nanos;
+
+        ClassTiming(String name, int bytes, long nanos) {
+            this.name = name;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final class JarStats {
+        final Path path;
+        long classes;
+        long bytes;
+        long nanos;
+        long skipped;
+        long upgraded;
+        long rewritten;
+        long failed;
+
+        JarStats(Path path) {
+            this.path = path;
+        }
+
+        void add(JarStats other) {
+            classes += other.classes;
+            bytes += other.bytes;
+            nanos += other.nanos;
+            skipped += other.skipped;
+            upgraded += other.upgraded;
+            rewritten += other.rewritten;
+            failed += other.failed;
+        }
+
+        String toJson() {
+            double seconds = nanos / 1e9;
+            return "{\"path\": " + quote(path.toString())
+                    + ", \"classes\": " + classes
+                    + ", \"bytes\": " + bytes
+                    + ", \"translationMillis\": " + nanos / 1_000_000
+                    + ", \"classesPerSecond\": " + (seconds > 0 ? Math.round(classes / seconds) : 0)
+                    + ", \"bytesPerSecond\": " + (seconds > 0 ? Math.round(bytes / seconds) : 0)
+                    + ", \"skipped\": " + skipped
+                    + ", \"upgraded\": " + upgraded
+                    + ", \"rewritten\": " + rewritten
+                    + ", \"failed\": " + failed + "}";
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.camel.jbit.Main;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end translation of a jar through {@link Main}, with the number of classes
+ * and input bytes translated reported as per second counters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JarTranslationBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Path directory;
+    private Path input;
+    private Path output;
+    private long inputSize;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("jbit-benchmark");
+        input = directory.resolve("input.jar");
+        output = directory.resolve("output.jar");
+        ClassShapes[] shapes = ClassShapes.values();
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(input))) {
+            for (int i = 0; i < classes; i++) {
+                String name = "org/apache/camel/jbit/benchmarks/generated/Class" + i;
+                zos.putNextEntry(new ZipEntry(name + ".class"));
+                byte[] data = shapes[i % shapes.length].create(name);
+                zos.write(data);
+                inputSize += data.length;
+            }
+            zos.putNextEntry(new ZipEntry("META-INF/resource.txt"));
+            zos.write(new byte[64 * 1024]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long classes;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void translate(Counters counters) throws Exception {
+        Main.main(new String[] {"--threads", Integer.toString(threads), input.toString(), output.toString()});
+        counters.classes += classes;
+        counters.bytes += inputSize;
+    }
+
+}
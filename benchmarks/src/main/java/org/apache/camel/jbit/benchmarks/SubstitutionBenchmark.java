@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.jbit.runtime.JavaIo;
+import org.apache.camel.jbit.runtime.JavaLang;
+import org.apache.camel.jbit.runtime.JavaNio;
+import org.apache.camel.jbit.runtime.JavaUtil;
+import org.apache.camel.jbit.runtime.JavaUtilStream;
+import org.apache.camel.jbit.translate.Substitution;
+import org.apache.camel.jbit.translate.SubstitutionIndex;
+import org.apache.camel.jbit.translate.SubstitutionTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup cost of finding the substitutions and indexing them, by scanning the runtime classes
+ * or by reading the table generated at build time.
+ * The single shot mode measures the first, cold, run of each fork.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(5)
+public class SubstitutionBenchmark {
+
+    // Same classes as Translator.SUBSTITUTION_CLASSES, which would run the Translator initialization
+    private static final List<Class<?>> SUBSTITUTION_CLASSES = Arrays.asList(
+            JavaIo.class,
+            JavaLang.class,
+            JavaNio.class,
+            JavaUtil.class,
+            JavaUtilStream.class
+    );
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public SubstitutionIndex coldStartup() {
+        return new SubstitutionIndex(Substitution.findSubstitutions(SUBSTITUTION_CLASSES));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public SubstitutionIndex coldStartupTable() {
+        return new SubstitutionIndex(SubstitutionTable.load(SUBSTITUTION_CLASSES));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public List<Substitution> findSubstitutions() {
+        return Substitution.findSubstitutions(SUBSTITUTION_CLASSES);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public List<Substitution> loadTable() {
+        return SubstitutionTable.load(SUBSTITUTION_CLASSES);
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.jbit.runtime.JavaUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups in the immutable collections returned by the {@link JavaUtil} backports,
+ * compared to the JDK 9+ ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollectionsBenchmark {
+
+    static final String[] KEYS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"};
+
+    private Map<String, String> map;
+    private Set<String> set;
+    private List<String> list;
+    private int index;
+
+    @State(Scope.Thread)
+    public static class Native {
+        Map<String, String> map;
+        Set<String> set;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setup() throws Throwable {
+            map = (Map<String, String>) Jdk.require(Jdk.MAP_OF_ENTRIES).invoke(entries());
+            set = (Set<String>) Jdk.require(Jdk.SET_OF).invoke((Object[]) KEYS.clone());
+        }
+    }
+
+    @Setup
+    public void setup() {
+        map = JavaUtil.java_util_Map_ofEntries(entries());
+        set = JavaUtil.java_util_Set_of(KEYS.clone());
+        list = new ArrayList<>();
+        for (String key : KEYS) {
+            list.add(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map.Entry<String, String>[] entries() {
+        Map.Entry<String, String>[] entries = new Map.Entry[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            entries[i] = new AbstractMap.SimpleImmutableEntry<>(KEYS[i], KEYS[KEYS.length - 1 - i]);
+        }
+        return entries;
+    }
+
+    private String nextKey() {
+        return KEYS[index++ & (KEYS.length - 1)];
+    }
+
+    @Benchmark
+    public String mapGetBackport() {
+        return map.get(nextKey());
+    }
+
+    @Benchmark
+    public String mapGetJdk(Native jdk) {
+        return jdk.map.get(nextKey());
+    }
+
+    @Benchmark
+    public boolean setContainsBackport() {
+        return set.contains(nextKey());
+    }
+
+    @Benchmark
+    public boolean setContainsJdk(Native jdk) {
+        return jdk.set.contains(nextKey());
+    }
+
+    @Benchmark
+    public List<String> listCopyOfBackport() {
+        return JavaUtil.java_util_List_copyOf(list);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<String> listCopyOfJdk() throws Throwable {
+        return (List<String>) Jdk.require(Jdk.LIST_COPY_OF).invoke(list);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.jbit.runtime.JavaIo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link JavaIo} stream backports compared to the JDK 9+ methods, on 64 KiB of data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IoBenchmark {
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final byte[] data = new byte[64 * 1024];
+
+    /**
+     * Hides the optimized methods of ByteArrayInputStream, so that both sides use the generic implementations.
+     */
+    private InputStream input() {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+        };
+    }
+
+    @Benchmark
+    public byte[] readAllBytesBackport() throws Exception {
+        InputStream in = input();
+        return JavaIo.java_io_InputStream_readAllBytes(in);
+    }
+
+    @Benchmark
+    public byte[] readAllBytesJdk() throws Throwable {
+        InputStream in = input();
+        return (byte[]) Jdk.require(Jdk.READ_ALL_BYTES).invokeExact(in);
+    }
+
+    @Benchmark
+    public long transferToBackport() throws Exception {
+        InputStream in = input();
+        return JavaIo.java_io_InputStream_transferTo(in, DISCARD);
+    }
+
+    @Benchmark
+    public long transferToJdk() throws Throwable {
+        InputStream in = input();
+        return (long) Jdk.require(Jdk.TRANSFER_TO).invokeExact(in, DISCARD);
+    }
+
+}
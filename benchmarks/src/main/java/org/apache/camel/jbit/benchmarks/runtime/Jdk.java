@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Method handles on the native JDK 9+ methods which are backported by the runtime classes,
+ * so that the benchmarks can be compiled for JDK 8. Held in static finals, the handles are
+ * constant folded and as cheap to call as the methods themselves.
+ * A handle is <code>null</code> when the running JDK does not have the method.
+ */
+final class Jdk {
+
+    static final MethodHandle MAP_OF_ENTRIES = findStatic(Map.class, "ofEntries", Map.class, Map.Entry[].class);
+    static final MethodHandle SET_OF = findStatic(Set.class, "of", Set.class, Object[].class);
+    static final MethodHandle LIST_COPY_OF = findStatic(List.class, "copyOf", List.class, java.util.Collection.class);
+    static final MethodHandle READ_ALL_BYTES = findVirtual(InputStream.class, "readAllBytes", byte[].class);
+    static final MethodHandle TRANSFER_TO = findVirtual(InputStream.class, "transferTo", long.class, OutputStream.class);
+    static final MethodHandle FILES_MISMATCH = findStatic(Files.class, "mismatch", long.class, Path.class, Path.class);
+    static final MethodHandle IS_BLANK = findVirtual(String.class, "isBlank", boolean.class);
+    static final MethodHandle ITERATE = findStatic(Stream.class, "iterate", Stream.class, Object.class, Predicate.class, UnaryOperator.class);
+    static final MethodHandle TO_UNMODIFIABLE_LIST = findStatic(Collectors.class, "toUnmodifiableList", Collector.class);
+
+    private Jdk() {
+    }
+
+    /**
+     * Links a native indy string concatenation, as javac 9+ would.
+     */
+    static MethodHandle concat(MethodType type, String recipe) {
+        try {
+            Class<?> factory = Class.forName("java.lang.invoke.StringConcatFactory");
+            MethodHandle bootstrap = MethodHandles.publicLookup().findStatic(factory, "makeConcatWithConstants",
+                    MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class, MethodType.class, String.class, Object[].class));
+            return ((CallSite) bootstrap.invoke(MethodHandles.lookup(), "concat", type, recipe, new Object[0])).dynamicInvoker();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to link string concatenation", t);
+        }
+    }
+
+    /**
+     * Returns the given handle, failing the benchmark if the running JDK does not have the method.
+     */
+    static MethodHandle require(MethodHandle handle) {
+        if (handle == null) {
+            throw new UnsupportedOperationException("Not available on Java " + System.getProperty("java.specification.version"));
+        }
+        return handle;
+    }
+
+    private static MethodHandle findStatic(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, parameterTypes));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameterTypes));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.jbit.runtime.JavaNio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link JavaNio#java_nio_Files_mismatch} compared to the JDK 12+ method,
+ * on two 1 MiB files differing by their last byte.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NioBenchmark {
+
+    private Path file1;
+    private Path file2;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] data = new byte[1024 * 1024];
+        file1 = Files.createTempFile("jbit-benchmark", ".bin");
+        Files.write(file1, data);
+        data[data.length - 1] = 1;
+        file2 = Files.createTempFile("jbit-benchmark", ".bin");
+        Files.write(file2, data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file1);
+        Files.deleteIfExists(file2);
+    }
+
+    @Benchmark
+    public long filesMismatchBackport() throws IOException {
+        return JavaNio.java_nio_Files_mismatch(file1, file2);
+    }
+
+    @Benchmark
+    public long filesMismatchJdk() throws Throwable {
+        return (long) Jdk.require(Jdk.FILES_MISMATCH).invokeExact(file1, file2);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the runtime benchmarks and compares, for each <code>xxxBackport</code> / <code>xxxJdk</code> pair,
+ * the ratio of the backport time to the native JDK time against a stored baseline.
+ * Ratios are used instead of raw scores so that baselines can be shared between machines.
+ * To avoid failing on noise, a regression is only reported when the most favorable ratio within
+ * the 99.9% confidence intervals of both scores exceeds the limit.
+ * <p>
+ * Exits with a non zero status if a ratio exceeds its baseline by more than the threshold,
+ * or rewrites the baseline when run with <code>--update</code>. Pairs which can not run
+ * on the current JDK are skipped.
+ */
+public final class RegressionGate {
+
+    private static final String BACKPORT = "Backport";
+    private static final String JDK = "Jdk";
+
+    private RegressionGate() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        boolean update = args.length > 0 && "--update".equals(args[0]);
+        int index = update ? 1 : 0;
+        if (args.length <= index) {
+            System.err.println("USAGE: RegressionGate [--update] <baseline.properties> [threshold]");
+            System.exit(2);
+        }
+        Path baselineFile = Paths.get(args[index]);
+        double threshold = args.length > index + 1 ? Double.parseDouble(args[index + 1]) : 0.25;
+
+        Options options = new OptionsBuilder()
+                .include(Pattern.quote(RegressionGate.class.getPackage().getName() + "."))
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        Map<String, Double> ratios = ratios(results, false);
+        Map<String, Double> bestRatios = ratios(results, true);
+
+        if (update) {
+            try (Writer writer = Files.newBufferedWriter(baselineFile, StandardCharsets.UTF_8)) {
+                writer.write("# Ratio of the backport time to the native JDK time, measured on Java "
+                        + System.getProperty("java.specification.version") + "\n");
+                for (Map.Entry<String, Double> ratio : ratios.entrySet()) {
+                    writer.write(ratio.getKey() + "=" + String.format(Locale.ROOT, "%.2f", ratio.getValue()) + "\n");
+                }
+            }
+            System.out.println("Updated " + baselineFile);
+            return;
+        }
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselineFile)) {
+            try (InputStream in = Files.newInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+        }
+        int regressions = 0;
+        System.out.println(String.format("%-40s %10s %10s", "Backport", "Baseline", "Ratio"));
+        for (Map.Entry<String, Double> ratio : ratios.entrySet()) {
+            String expected = baseline.getProperty(ratio.getKey());
+            if (expected == null) {
+                System.out.println(String.format("%-40s %10s %10.2f", ratio.getKey(), "-", ratio.getValue()));
+                continue;
+            }
+            boolean regressed = bestRatios.get(ratio.getKey()) > Double.parseDouble(expected) * (1 + threshold);
+            System.out.println(String.format("%-40s %10s %10.2f%s", ratio.getKey(), expected, ratio.getValue(),
+                    regressed ? "  REGRESSION" : ""));
+            if (regressed) {
+                regressions++;
+            }
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " backport(s) regressed by more than " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the backport to native time ratios, keyed by benchmark class and pair name,
+     * computed from the scores or, if <code>best</code>, from the bounds of their confidence intervals
+     * which are the most favorable to the backports.
+     */
+    static Map<String, Double> ratios(Collection<RunResult> results, boolean best) {
+        Map<String, Double> backports = new TreeMap<>();
+        Map<String, Double> jdks = new TreeMap<>();
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            // Keep the simple class name and the method name
+            String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+            double score = result.getPrimaryResult().getScore();
+            double[] confidence = result.getPrimaryResult().getScoreConfidence();
+            if (name.endsWith(BACKPORT)) {
+                backports.put(name.substring(0, name.length() - BACKPORT.length()),
+                        best && !Double.isNaN(confidence[0]) ? confidence[0] : score);
+            } else if (name.endsWith(JDK)) {
+                jdks.put(name.substring(0, name.length() - JDK.length()),
+                        best && !Double.isNaN(confidence[1]) ? confidence[1] : score);
+            }
+        }
+        Map<String, Double> ratios = new TreeMap<>();
+        for (Map.Entry<String, Double> backport : backports.entrySet()) {
+            Double jdk = jdks.get(backport.getKey());
+            if (jdk != null) {
+                ratios.put(backport.getKey(), backport.getValue() / jdk);
+            }
+        }
+        return ratios;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+import org.apache.camel.jbit.runtime.JavaUtilStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link JavaUtilStream} backports compared to the JDK 9+ and JDK 10+ methods, on 1000 elements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamBenchmark {
+
+    private final List<Integer> values = new ArrayList<>();
+    private final Predicate<Integer> hasNext = i -> i < 1000;
+    private final UnaryOperator<Integer> next = i -> i + 1;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < 1000; i++) {
+            values.add(i);
+        }
+    }
+
+    @Benchmark
+    public long iterateBackport() {
+        return JavaUtilStream.java_util_stream_Stream_iterate(0, hasNext, next).count();
+    }
+
+    @Benchmark
+    public long iterateJdk() throws Throwable {
+        return ((Stream<?>) Jdk.require(Jdk.ITERATE).invokeExact((Object) 0, hasNext, next)).count();
+    }
+
+    @Benchmark
+    public List<Integer> toUnmodifiableListBackport() {
+        return values.stream().collect(JavaUtilStream.java_util_stream_Collectors_toUnmodifiableList());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Integer> toUnmodifiableListJdk() throws Throwable {
+        return values.stream().collect((Collector<Integer, ?, List<Integer>>) Jdk.require(Jdk.TO_UNMODIFIABLE_LIST).invokeExact());
+    }
+
+}
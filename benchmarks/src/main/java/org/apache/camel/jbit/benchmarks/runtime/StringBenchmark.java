@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.benchmarks.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.jbit.runtime.JavaLang;
+import org.apache.camel.jbit.runtime.StringConcatFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link JavaLang#java_lang_String_isBlank} and the indy string concatenation linked by
+ * {@link StringConcatFactory}, compared to the JDK 11+ implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StringBenchmark {
+
+    static final MethodType CONCAT_TYPE = MethodType.methodType(String.class, String.class, int.class, long.class);
+    static final String CONCAT_RECIPE = "\u0001 failed after \u0001 attempts in \u0001 ms";
+
+    private String blank = "  \t    \t  ";
+    private String message = "request";
+    private int attempts = 3;
+    private long time = 1234L;
+
+    /**
+     * Holders linking each call site only when first used, as the backport can not be linked on JDK 17+
+     * and the native one on JDK 8.
+     */
+    static final class BackportConcat {
+        static final MethodHandle CONCAT;
+
+        static {
+            try {
+                CONCAT = StringConcatFactory.makeConcatWithConstants(MethodHandles.lookup(), "concat", CONCAT_TYPE, CONCAT_RECIPE).dynamicInvoker();
+            } catch (StringConcatFactory.StringConcatException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    static final class JdkConcat {
+        static final MethodHandle CONCAT = Jdk.require(Jdk.concat(CONCAT_TYPE, CONCAT_RECIPE));
+    }
+
+    @Benchmark
+    public boolean isBlankBackport() {
+        return JavaLang.java_lang_String_isBlank(blank);
+    }
+
+    @Benchmark
+    public boolean isBlankJdk() throws Throwable {
+        return (boolean) Jdk.require(Jdk.IS_BLANK).invokeExact(blank);
+    }
+
+    @Benchmark
+    public String concatBackport() throws Throwable {
+        return (String) BackportConcat.CONCAT.invokeExact(message, attempts, time);
+    }
+
+    @Benchmark
+    public String concatJdk() throws Throwable {
+        return (String) JdkConcat.CONCAT.invokeExact(message, attempts, time);
+    }
+
+}
@@ -0,0 +1,583 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.io.BufferedOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.apache.camel.jbit.translate.ClassHierarchy;
+import org.apache.camel.jbit.translate.TranslationListener;
+import org.apache.camel.jbit.translate.Translator;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Translates a jar into a JDK 8 compatible jar.
+ * <p>
+ * Entries are read sequentially, translated on a pool of worker threads when
+ * more than one thread is configured, and written back in their original order.
+ * Resources and classes which do not need any translation are copied with their
+ * original compressed data, CRC and sizes, without being inflated.
+ * <p>
+ * Several jars and class directories can also be translated at once into an output directory.
+ */
+public class JarTranslator {
+
+    /**
+     * Compression level writing entries without compressing them.
+     */
+    public static final int STORED = RawZipWriter.STORED_LEVEL;
+
+    /**
+     * Name of the jar holding the jbit runtime classes, written once in the output directory in batch mode.
+     */
+    public static final String RUNTIME_JAR = "jbit-runtime.jar";
+
+    private int threads = 1;
+    private boolean incremental;
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+    private boolean parallelDeflate;
+    private List<Path> classpath = Collections.emptyList();
+    private boolean inlineConcat;
+    private Translator translator = Translator.getDefault();
+    private Consumer<Path> framesComputedListener;
+
+    private static Map<String, byte[]> runtimeClasses;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public JarTranslator setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * In incremental mode, a sidecar index of input class hashes is written next to the output jar,
+     * and classes which did not change since the previous run are copied from the previous output
+     * instead of being translated again, unless their frames were computed from the class hierarchy.
+     */
+    public JarTranslator setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the compression level used for the entries which are not copied as is,
+     * either a {@link Deflater} level or {@link #STORED}.
+     * When storing, all entries are stored, including compressed resources from the input.
+     */
+    public JarTranslator setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != STORED && compressionLevel != Deflater.DEFAULT_COMPRESSION
+                && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public boolean isParallelDeflate() {
+        return parallelDeflate;
+    }
+
+    /**
+     * When enabled, entries are compressed by the worker threads into independent buffers
+     * instead of being compressed sequentially while writing the output.
+     */
+    public JarTranslator setParallelDeflate(boolean parallelDeflate) {
+        this.parallelDeflate = parallelDeflate;
+        return this;
+    }
+
+    public List<Path> getClasspath() {
+        return classpath;
+    }
+
+    /**
+     * Sets the jars and class directories in which the super classes of the translated classes are
+     * looked up, in addition to the input jar and the JDK, when stack map frames have to be computed.
+     */
+    public JarTranslator setClasspath(List<Path> classpath) {
+        this.classpath = new ArrayList<>(classpath);
+        return this;
+    }
+
+    public boolean isInlineConcat() {
+        return inlineConcat;
+    }
+
+    /**
+     * When enabled, string concatenations are translated into plain <code>StringBuilder</code> code,
+     * so that they are not linked at runtime by the <code>StringConcatFactory</code> backport, which
+     * requires ASM on the classpath.
+     */
+    public JarTranslator setInlineConcat(boolean inlineConcat) {
+        this.inlineConcat = inlineConcat;
+        this.translator = inlineConcat ? Translator.builder().inlineConcat(true).build() : Translator.getDefault();
+        return this;
+    }
+
+    /**
+     * Sets a listener called once for each input in which the stack map frames of at least one class
+     * were computed, so that its translation depends on the classpath. It may be called from the worker threads.
+     */
+    public JarTranslator setFramesComputedListener(Consumer<Path> framesComputedListener) {
+        this.framesComputedListener = framesComputedListener;
+        return this;
+    }
+
+    /**
+     * Returns a digest identifying the translation applied to the classes.
+     */
+    public String getFingerprint() {
+        return translator.getFingerprint();
+    }
+
+    public void translate(Path inputPath, Path outputPath) throws IOException {
+        ExecutorService executor = createExecutor(threads, "jbit-worker");
+        List<RawZipReader> libraries = new ArrayList<>();
+        try {
+            List<Path> paths = new ArrayList<>();
+            paths.add(inputPath);
+            paths.addAll(classpath);
+            translate(inputPath, outputPath, executor, createHierarchy(paths, libraries), true);
+        } finally {
+            shutdown(executor, libraries);
+        }
+    }
+
+    /**
+     * Translates several jars and class directories into the given directory, keeping their file names.
+     * All the inputs share the same worker threads and class hierarchy, and the largest inputs are
+     * started first so that they do not end up being translated alone once the others are done.
+     * The runtime classes are not added to each output, but written once into {@link #RUNTIME_JAR}.
+     */
+    public void translate(List<Path> inputPaths, Path outputDirectory) throws IOException {
+        Set<Path> names = new HashSet<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path input : inputPaths) {
+            if (!names.add(input.getFileName())) {
+                throw new IllegalArgumentException("Duplicate input name: " + input.getFileName());
+            }
+            if (input.getFileName().toString().equals(RUNTIME_JAR)) {
+                throw new IllegalArgumentException("Reserved input name: " + RUNTIME_JAR);
+            }
+            sizes.put(input, size(input));
+        }
+        List<Path> inputs = new ArrayList<>(inputPaths);
+        inputs.sort(Comparator.comparing((Path input) -> sizes.get(input)).reversed());
+        Files.createDirectories(outputDirectory);
+
+        ExecutorService executor = createExecutor(threads, "jbit-worker");
+        // Inputs are driven by their own threads, which only read, wait for and write entries,
+        // so that they never hold a worker while waiting for other workers
+        ExecutorService drivers = createExecutor(Math.min(threads, inputs.size()), "jbit-driver");
+        List<RawZipReader> libraries = new ArrayList<>();
+        try {
+            List<Path> paths = new ArrayList<>(inputs);
+            paths.addAll(classpath);
+            ClassHierarchy hierarchy = createHierarchy(paths, libraries);
+            List<Future<Void>> results = new ArrayList<>();
+            for (Path input : inputs) {
+                Path output = outputDirectory.resolve(input.getFileName().toString());
+                results.add(submit(drivers, () -> {
+                    translate(input, output, executor, hierarchy, false);
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                await(result);
+            }
+            try (RawZipWriter out = new RawZipWriter(new BufferedOutputStream(
+                    Files.newOutputStream(outputDirectory.resolve(RUNTIME_JAR))), compressionLevel)) {
+                for (Map.Entry<String, byte[]> runtimeClass : runtimeClasses().entrySet()) {
+                    out.write(runtimeClass.getKey(), null, runtimeClass.getValue());
+                }
+            }
+        } finally {
+            if (drivers != null) {
+                drivers.shutdownNow();
+            }
+            shutdown(executor, libraries);
+        }
+    }
+
+    /**
+     * @param embedRuntime add the runtime classes to the output
+     */
+    private void translate(Path inputPath, Path outputPath, ExecutorService executor, ClassHierarchy hierarchy,
+                           boolean embedRuntime) throws IOException {
+        if (Files.isDirectory(inputPath)) {
+            translateDirectory(inputPath, outputPath, executor, hierarchy, embedRuntime);
+            return;
+        }
+        if (!incremental) {
+            doTranslate(inputPath, outputPath, executor, hierarchy, embedRuntime, null, null, null);
+            return;
+        }
+        // Entries of the previous output can only be reused if they have been compressed the same way
+        String fingerprint = translator.getFingerprint() + "-" + compressionLevel;
+        TranslationIndex previousIndex = TranslationIndex.load(outputPath, fingerprint);
+        TranslationIndex index = new TranslationIndex();
+        Path tempPath = outputPath.resolveSibling(outputPath.getFileName() + ".tmp");
+        try (RawZipReader previous = previousIndex.isEmpty() ? null : new RawZipReader(outputPath)) {
+            doTranslate(inputPath, tempPath, executor, hierarchy, embedRuntime, previous, previousIndex, index);
+        } catch (IOException | RuntimeException | Error e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        // Never leave the previous index next to the new jar, should storing the new index fail
+        Files.deleteIfExists(TranslationIndex.indexPath(outputPath));
+        Files.move(tempPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        index.store(outputPath, fingerprint);
+    }
+
+    private void doTranslate(Path inputPath, Path outputPath, ExecutorService executor, ClassHierarchy hierarchy, boolean embedRuntime,
+                             RawZipReader previous, TranslationIndex previousIndex, TranslationIndex index) throws IOException {
+        TranslationListener listener = listener(inputPath);
+        try (RawZipReader in = new RawZipReader(inputPath);
+             RawZipWriter out = new RawZipWriter(new BufferedOutputStream(Files.newOutputStream(outputPath)), compressionLevel)) {
+            // Bound the number of entries held in memory while waiting to be written
+            int maxPending = threads * 4;
+            Deque<Future<Output>> pending = new ArrayDeque<>();
+            for (RawZipEntry entry : in.entries()) {
+                String name = entry.getName();
+                boolean isClass = name.endsWith(".class") && !entry.isDirectory();
+                boolean restore = compressionLevel == STORED && entry.method != RawZipEntry.STORED;
+                Future<Output> future;
+                if (!isClass && !restore) {
+                    // Resources are copied as is, without being inflated
+                    future = CompletableFuture.completedFuture(new Output(in, entry, null));
+                } else {
+                    byte[] raw = in.readRaw(entry);
+                    future = submit(executor, () -> {
+                        byte[] data = RawZipReader.inflate(entry, raw);
+                        Output output;
+                        if (!isClass) {
+                            output = new Output(in, entry, data);
+                        } else if (index != null) {
+                            output = translateIncremental(in, entry, data, restore, hierarchy, listener, previous, previousIndex, index);
+                        } else {
+                            byte[] result = translator.doTransform(data, hierarchy, listener);
+                            output = new Output(in, entry, result != data ? result : restore ? data : null);
+                        }
+                        if (parallelDeflate && output.data != null) {
+                            output.compressed = RawZipWriter.compress(name, output.entry, output.data, compressionLevel);
+                        }
+                        return output;
+                    });
+                }
+                pending.add(future);
+                if (pending.size() >= maxPending) {
+                    writeEntry(out, pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeEntry(out, pending.poll());
+            }
+            if (embedRuntime) {
+                for (Map.Entry<String, byte[]> runtimeClass : runtimeClasses().entrySet()) {
+                    out.write(runtimeClass.getKey(), null, runtimeClass.getValue());
+                }
+            }
+        }
+    }
+
+    private void translateDirectory(Path inputDirectory, Path outputDirectory, ExecutorService executor,
+                                    ClassHierarchy hierarchy, boolean embedRuntime) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(inputDirectory)) {
+            files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        TranslationListener listener = listener(inputDirectory);
+        List<Future<Void>> pending = new ArrayList<>();
+        for (Path file : files) {
+            Path target = outputDirectory.resolve(inputDirectory.relativize(file).toString());
+            Files.createDirectories(target.getParent());
+            if (file.getFileName().toString().endsWith(".class")) {
+                pending.add(submit(executor, () -> {
+                    Files.write(target, translator.doTransform(Files.readAllBytes(file), hierarchy, listener));
+                    return null;
+                }));
+            } else {
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (embedRuntime) {
+            for (Map.Entry<String, byte[]> runtimeClass : runtimeClasses().entrySet()) {
+                Path target = outputDirectory.resolve(runtimeClass.getKey());
+                Files.createDirectories(target.getParent());
+                Files.write(target, runtimeClass.getValue());
+            }
+        }
+        for (Future<Void> future : pending) {
+            await(future);
+        }
+    }
+
+    private static long size(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Files.size(path);
+        }
+        try (Stream<Path> stream = Files.walk(path)) {
+            return stream.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads, String name) {
+        return threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    private static void shutdown(ExecutorService executor, List<RawZipReader> libraries) throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (RawZipReader library : libraries) {
+            library.close();
+        }
+    }
+
+    /**
+     * Runs the task on the given executor, or in the calling thread if there is none.
+     */
+    private static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Creates the class hierarchy used to compute frames, looking up classes in the given jars and
+     * directories, in order, then in the JDK, without loading any of them.
+     */
+    private static ClassHierarchy createHierarchy(List<Path> paths, List<RawZipReader> libraries) throws IOException {
+        List<ClassHierarchy.ClassFileLocator> locators = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                locators.add(name -> {
+                    Path file = path.resolve(name + ".class");
+                    return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+                });
+            } else if (Files.isRegularFile(path)) {
+                RawZipReader library = new RawZipReader(path);
+                libraries.add(library);
+                locators.add(locator(library));
+            }
+        }
+        return new ClassHierarchy(ClassHierarchy.jdk(), name -> {
+            for (ClassHierarchy.ClassFileLocator locator : locators) {
+                byte[] data = locator.locate(name);
+                if (data != null) {
+                    return data;
+                }
+            }
+            return null;
+        });
+    }
+
+    private static ClassHierarchy.ClassFileLocator locator(RawZipReader reader) {
+        return name -> {
+            RawZipEntry entry = reader.getEntry(name + ".class");
+            return entry != null ? reader.read(entry) : null;
+        };
+    }
+
+    private Output translateIncremental(RawZipReader in, RawZipEntry entry, byte[] data, boolean restore, ClassHierarchy hierarchy,
+                                               TranslationListener listener, RawZipReader previous, TranslationIndex previousIndex, TranslationIndex index) {
+        String name = entry.getName();
+        String hash = TranslationIndex.hash(data);
+        if (previous != null && hash.equals(previousIndex.get(name))) {
+            RawZipEntry previousEntry = previous.getEntry(name);
+            if (previousEntry != null) {
+                index.put(name, hash);
+                return new Output(previous, previousEntry, null);
+            }
+        }
+        boolean[] framesComputed = new boolean[1];
+        byte[] result = translator.doTransform(data, hierarchy, new TranslationListener() {
+            @Override
+            public void rewritten(String owner, String name, String descriptor) {
+            }
+
+            @Override
+            public void framesComputed(String className) {
+                framesComputed[0] = true;
+                listener.framesComputed(className);
+            }
+        });
+        // Computed frames depend on other classes, which may change without this class changing
+        if (!framesComputed[0]) {
+            index.put(name, hash);
+        }
+        return new Output(in, entry, result != data ? result : restore ? data : null);
+    }
+
+    /**
+     * Returns the listener reporting the given input to the frames computed listener, at most once.
+     */
+    private TranslationListener listener(Path inputPath) {
+        AtomicBoolean reported = new AtomicBoolean();
+        return new TranslationListener() {
+            @Override
+            public void rewritten(String owner, String name, String descriptor) {
+            }
+
+            @Override
+            public void framesComputed(String className) {
+                if (framesComputedListener != null && reported.compareAndSet(false, true)) {
+                    framesComputedListener.accept(inputPath);
+                }
+            }
+        };
+    }
+
+    private static void writeEntry(RawZipWriter out, Future<Output> future) throws IOException {
+        Output output = await(future);
+        if (output.compressed != null) {
+            out.write(output.compressed);
+        } else if (output.data != null) {
+            out.write(output.entry.getName(), output.entry, output.data);
+        } else {
+            out.copyRaw(output.source, output.entry);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while translating", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Unable to translate", cause);
+        }
+    }
+
+    /**
+     * Returns the runtime classes added to every output, translated once and indexed by file name.
+     */
+    private static synchronized Map<String, byte[]> runtimeClasses() throws IOException {
+        if (runtimeClasses == null) {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (Class<?> cl : Translator.SUBSTITUTION_CLASSES) {
+                addLoadedClass(classes, cl);
+            }
+            addLoadedClass(classes, org.apache.camel.jbit.runtime.StringConcatFactory.class);
+            addLoadedClass(classes, org.apache.camel.jbit.runtime.StringConcatGenerator.class);
+            addLoadedClass(classes, org.apache.camel.jbit.runtime.StringConcatStatistics.class);
+            addLoadedClass(classes, org.apache.camel.jbit.runtime.StringConcatLinkageEvent.class);
+            runtimeClasses = classes;
+        }
+        return runtimeClasses;
+    }
+
+    private static void addLoadedClass(Map<String, byte[]> classes, Class<?> clazz) throws IOException {
+        String fileName = clazz.getName().replace('.', '/') + ".class";
+        byte[] data;
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(fileName)) {
+            data = Translator.transform(in);
+        }
+        classes.put(fileName, data);
+        ClassReader r = new ClassReader(data);
+        r.accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                try {
+                    String cn = name.replace('/', '.');
+                    Class<?> cl = clazz.getClassLoader().loadClass(cn);
+                    if (cl.getEnclosingClass() == clazz) {
+                        addLoadedClass(classes, cl);
+                    }
+                } catch (ClassNotFoundException | IOException e) {
+                    throw new IOError(e);
+                }
+            }
+        }, 0);
+    }
+
+    /**
+     * The content of an output entry: uncompressed data to deflate, or when <code>data</code>
+     * is <code>null</code>, the raw compressed data of an entry of the <code>source</code> zip.
+     */
+    private static final class Output {
+        final RawZipReader source;
+        final RawZipEntry entry;
+        final byte[] data;
+        RawZipWriter.Compressed compressed;
+
+        Output(RawZipReader source, RawZipEntry entry, byte[] data) {
+            this.source = source;
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+}
@@ -16,104 +16,95 @@
  */
 package org.apache.camel.jbit;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOError;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-
-import org.apache.camel.jbit.translate.Translator;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.Opcodes;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            System.err.println("USAGE: jbit [input.jar] [output.jar]");
+        JarTranslator translator = new JarTranslator();
+        List<String> paths = new ArrayList<>();
+        Path outputDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--threads".equals(arg) && i + 1 < args.length) {
+                translator.setThreads(Integer.parseInt(args[++i]));
+            } else if ("--incremental".equals(arg)) {
+                translator.setIncremental(true);
+            } else if ("--compression".equals(arg) && i + 1 < args.length) {
+                String level = args[++i];
+                translator.setCompressionLevel("stored".equals(level) ? JarTranslator.STORED : Integer.parseInt(level));
+            } else if ("--parallel-deflate".equals(arg)) {
+                translator.setParallelDeflate(true);
+            } else if ("--inline-concat".equals(arg)) {
+                translator.setInlineConcat(true);
+            } else if ("--classpath".equals(arg) && i + 1 < args.length) {
+                List<Path> classpath = new ArrayList<>();
+                for (String path : args[++i].split(File.pathSeparator)) {
+                    classpath.add(Paths.get(path));
+                }
+                translator.setClasspath(classpath);
+            } else if ("--output-dir".equals(arg) && i + 1 < args.length) {
+                outputDirectory = Paths.get(args[++i]);
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (outputDirectory != null) {
+            if (paths.isEmpty()) {
+                usage();
+                return;
+            }
+            // Inputs may also be given as classpaths
+            List<Path> inputs = new ArrayList<>();
+            for (String path : paths) {
+                for (String input : path.split(File.pathSeparator)) {
+                    inputs.add(Paths.get(input));
+                }
+            }
+            translator.translate(inputs, outputDirectory);
+            return;
+        }
+        if (paths.size() != 2) {
+            usage();
             return;
         }
 
-        Path inputPath = Paths.get(args[0]);
-        Path outputPath = Paths.get(args[1]);
+        Path inputPath = Paths.get(paths.get(0));
+        Path outputPath = Paths.get(paths.get(1));
         if (inputPath.equals(outputPath)) {
+            if (translator.isIncremental()) {
+                System.err.println("Incremental mode requires distinct input and output jars");
+                return;
+            }
             Path org = Paths.get(inputPath.toString().replace(".jar", "-org.jar"));
             Files.move(inputPath, org);
             inputPath = org;
         }
-        try (JarInputStream in = new JarInputStream(new BufferedInputStream(Files.newInputStream(inputPath)))) {
-            Manifest man = in.getManifest();
-            try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(outputPath)), man)) {
-                out.setLevel(Deflater.BEST_COMPRESSION);
-                JarEntry entry;
-                while ((entry = in.getNextJarEntry()) != null) {
-                    String name = entry.getName();
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    copy(in, baos);
-                    byte[] data = baos.toByteArray();
-                    if (name.endsWith(".class")) {
-                        data = Translator.transform(data);
-                    }
-                    entry.setMethod(ZipEntry.DEFLATED);
-                    entry.setSize(data.length);
-                    entry.setCompressedSize(-1);
-                    out.putNextEntry(entry);
-                    out.write(data);
-                    out.closeEntry();
-                }
-                for (Class<?> cl : Translator.SUBSTITUTION_CLASSES) {
-                    addLoadedClass(out, cl);
-                }
-                addLoadedClass(out, org.apache.camel.jbit.runtime.StringConcatFactory.class);
-            }
-        }
-    }
-
-    private static void copy(InputStream in, OutputStream out) throws IOException {
-        byte[] buffer = new byte[8192];
-        int read;
-        while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
-            out.write(buffer, 0, read);
-        }
+        translator.translate(inputPath, outputPath);
     }
 
-    private static void addLoadedClass(JarOutputStream out, Class<?> clazz) throws IOException {
-        String fileName = clazz.getName().replace('.', '/') + ".class";
-        JarEntry entry = new JarEntry(fileName);
-        out.putNextEntry(entry);
-        byte[] data;
-        try (InputStream in = clazz.getClassLoader().getResourceAsStream(fileName)) {
-            data = Translator.transform(in);
-            out.write(data);
-        }
-        out.closeEntry();
-        ClassReader r = new ClassReader(data);
-        r.accept(new ClassVisitor(Opcodes.ASM8) {
-            @Override
-            public void visitInnerClass(String name, String outerName, String innerName, int access) {
-                try {
-                    String cn = name.replace('/', '.');
-                    Class<?> cl = clazz.getClassLoader().loadClass(cn);
-                    if (cl.getEnclosingClass() == clazz) {
-                        addLoadedClass(out, cl);
-                    }
-                } catch (ClassNotFoundException | IOException e) {
-                    throw new IOError(e);
-                }
-            }
-        }, 0);
+    private static void usage() {
+        System.err.println("USAGE: jbit [options] [input.jar] [output.jar]");
+        System.err.println("       jbit [options] --output-dir <dir> [input]...");
+        System.err.println("  --threads <n>    number of threads used to translate classes (default: 1)");
+        System.err.println("  --incremental    only translate classes which changed since the previous output");
+        System.err.println("  --compression <level>");
+        System.err.println("                   compression level, from 0 to 9 or 'stored' (default: 9)");
+        System.err.println("  --parallel-deflate");
+        System.err.println("                   compress entries on the worker threads");
+        System.err.println("  --inline-concat  translate string concatenations into StringBuilder code instead of linking them at runtime");
+        System.err.println("  --classpath <path>");
+        System.err.println("                   jars and directories containing the super classes of the translated classes");
+        System.err.println("  --output-dir <dir>");
+        System.err.println("                   translate all the input jars and class directories into the given directory");
     }
 
 }
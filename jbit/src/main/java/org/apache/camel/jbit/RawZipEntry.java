@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A zip entry as stored in the central directory, including the information
+ * needed to copy its compressed data without inflating it.
+ */
+final class RawZipEntry {
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    final byte[] rawName;
+    final String name;
+    final int versionMadeBy;
+    final int flags;
+    final int method;
+    final int dosTime;
+    final long crc;
+    final long compressedSize;
+    final long size;
+    final byte[] extra;
+    final byte[] comment;
+    final int internalAttributes;
+    final long externalAttributes;
+    final long localHeaderOffset;
+
+    RawZipEntry(byte[] rawName, int versionMadeBy, int flags, int method, int dosTime,
+                long crc, long compressedSize, long size, byte[] extra, byte[] comment,
+                int internalAttributes, long externalAttributes, long localHeaderOffset) {
+        this.rawName = rawName;
+        this.name = new String(rawName, StandardCharsets.UTF_8);
+        this.versionMadeBy = versionMadeBy;
+        this.flags = flags;
+        this.method = method;
+        this.dosTime = dosTime;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.extra = extra;
+        this.comment = comment;
+        this.internalAttributes = internalAttributes;
+        this.externalAttributes = externalAttributes;
+        this.localHeaderOffset = localHeaderOffset;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isDirectory() {
+        return name.endsWith("/");
+    }
+
+}
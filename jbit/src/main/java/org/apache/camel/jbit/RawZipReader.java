@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file and gives access to the raw,
+ * still compressed, data of its entries.
+ * Reads use positional channel operations, so a reader can be shared by several threads.
+ */
+final class RawZipReader implements Closeable {
+
+    static final int LOCAL_HEADER_SIG = 0x04034b50;
+    static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+    static final int ZIP64_END_SIG = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<RawZipEntry> entries;
+    private volatile Map<String, RawZipEntry> byName;
+
+    RawZipReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the entries in central directory order.
+     */
+    List<RawZipEntry> entries() {
+        return entries;
+    }
+
+    RawZipEntry getEntry(String name) {
+        Map<String, RawZipEntry> map = byName;
+        if (map == null) {
+            map = new HashMap<>();
+            for (RawZipEntry entry : entries) {
+                map.putIfAbsent(entry.getName(), entry);
+            }
+            byName = map;
+        }
+        return map.get(name);
+    }
+
+    /**
+     * Reads the compressed data of the given entry.
+     */
+    byte[] readRaw(RawZipEntry entry) throws IOException {
+        if (entry.compressedSize > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.getName());
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) entry.compressedSize);
+        readFully(buf, getDataOffset(entry));
+        return buf.array();
+    }
+
+    /**
+     * Reads and inflates the data of the given entry.
+     */
+    byte[] read(RawZipEntry entry) throws IOException {
+        return inflate(entry, readRaw(entry));
+    }
+
+    /**
+     * Copies the compressed data of the given entry to the output stream, without buffering it fully.
+     */
+    void transferRaw(RawZipEntry entry, OutputStream out) throws IOException {
+        long position = getDataOffset(entry);
+        long remaining = entry.compressedSize;
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(remaining, 65536));
+        while (remaining > 0) {
+            // Buffer methods are called on Buffer, their ByteBuffer overrides do not exist on JDK 8
+            ((Buffer) buf).clear();
+            ((Buffer) buf).limit((int) Math.min(remaining, buf.capacity()));
+            readFully(buf, position);
+            out.write(buf.array(), 0, buf.limit());
+            position += buf.limit();
+            remaining -= buf.limit();
+        }
+    }
+
+    static byte[] inflate(RawZipEntry entry, byte[] raw) throws IOException {
+        if (entry.method == RawZipEntry.STORED) {
+            return raw;
+        } else if (entry.method != RawZipEntry.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.getName());
+        }
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.getName());
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            byte[] data = new byte[(int) entry.size];
+            int off = 0;
+            while (off < data.length) {
+                int n = inflater.inflate(data, off, data.length - off);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated entry: " + entry.getName());
+                }
+                off += n;
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid entry " + entry.getName() + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long getDataOffset(RawZipEntry entry) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, entry.localHeaderOffset);
+        if (header.getInt(0) != LOCAL_HEADER_SIG) {
+            throw new ZipException("Invalid local header for " + entry.getName() + " in " + path);
+        }
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    private List<RawZipEntry> readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tail = (int) Math.min(size, END_SIZE + 0xFFFF + ZIP64_LOCATOR_SIZE);
+        ByteBuffer buf = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buf, size - tail);
+        int end = -1;
+        for (int i = tail - END_SIZE; i >= 0; i--) {
+            if (buf.getInt(i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("Not a zip file: " + path);
+        }
+        long count = buf.getShort(end + 10) & 0xFFFF;
+        long cdSize = buf.getInt(end + 12) & ZIP64_MAGIC;
+        long cdOffset = buf.getInt(end + 16) & ZIP64_MAGIC;
+        if (end >= ZIP64_LOCATOR_SIZE && buf.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIG) {
+            long zip64End = buf.getLong(end - ZIP64_LOCATOR_SIZE + 8);
+            ByteBuffer z64 = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(z64, zip64End);
+            if (z64.getInt(0) != ZIP64_END_SIG) {
+                throw new ZipException("Invalid zip64 end of central directory: " + path);
+            }
+            count = z64.getLong(32);
+            cdSize = z64.getLong(40);
+            cdOffset = z64.getLong(48);
+        }
+        if (cdSize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory too large: " + path);
+        }
+        ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(cd, cdOffset);
+        ((Buffer) cd).flip();
+        List<RawZipEntry> list = new ArrayList<>((int) Math.min(count, 1 << 20));
+        for (long i = 0; i < count; i++) {
+            if (cd.remaining() < CENTRAL_HEADER_SIZE || cd.getInt() != CENTRAL_HEADER_SIG) {
+                throw new ZipException("Invalid central directory: " + path);
+            }
+            int versionMadeBy = cd.getShort() & 0xFFFF;
+            cd.getShort(); // version needed
+            int flags = cd.getShort() & 0xFFFF;
+            int method = cd.getShort() & 0xFFFF;
+            int dosTime = cd.getInt();
+            long crc = cd.getInt() & ZIP64_MAGIC;
+            long compressedSize = cd.getInt() & ZIP64_MAGIC;
+            long uncompressedSize = cd.getInt() & ZIP64_MAGIC;
+            int nameLength = cd.getShort() & 0xFFFF;
+            int extraLength = cd.getShort() & 0xFFFF;
+            int commentLength = cd.getShort() & 0xFFFF;
+            cd.getShort(); // disk number
+            int internalAttributes = cd.getShort() & 0xFFFF;
+            long externalAttributes = cd.getInt() & ZIP64_MAGIC;
+            long offset = cd.getInt() & ZIP64_MAGIC;
+            byte[] name = new byte[nameLength];
+            cd.get(name);
+            byte[] extra = new byte[extraLength];
+            cd.get(extra);
+            byte[] comment = new byte[commentLength];
+            cd.get(comment);
+            // Resolve zip64 values, which are stored in the order below when the header holds the magic value
+            ByteBuffer ex = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+            while (ex.remaining() >= 4) {
+                int id = ex.getShort() & 0xFFFF;
+                int len = ex.getShort() & 0xFFFF;
+                int next = ex.position() + len;
+                if (id == ZIP64_EXTRA_ID) {
+                    if (uncompressedSize == ZIP64_MAGIC && ex.position() + 8 <= next) {
+                        uncompressedSize = ex.getLong();
+                    }
+                    if (compressedSize == ZIP64_MAGIC && ex.position() + 8 <= next) {
+                        compressedSize = ex.getLong();
+                    }
+                    if (offset == ZIP64_MAGIC && ex.position() + 8 <= next) {
+                        offset = ex.getLong();
+                    }
+                }
+                if (next > ex.limit()) {
+                    break;
+                }
+                ((Buffer) ex).position(next);
+            }
+            list.add(new RawZipEntry(name, versionMadeBy, flags, method, dosTime, crc, compressedSize, uncompressedSize,
+                    extra, comment, internalAttributes, externalAttributes, offset));
+        }
+        return list;
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file: " + path);
+            }
+            position += n;
+        }
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.apache.camel.jbit.RawZipReader.CENTRAL_HEADER_SIG;
+import static org.apache.camel.jbit.RawZipReader.END_SIG;
+import static org.apache.camel.jbit.RawZipReader.LOCAL_HEADER_SIG;
+import static org.apache.camel.jbit.RawZipReader.ZIP64_END_SIG;
+import static org.apache.camel.jbit.RawZipReader.ZIP64_EXTRA_ID;
+import static org.apache.camel.jbit.RawZipReader.ZIP64_LOCATOR_SIG;
+import static org.apache.camel.jbit.RawZipReader.ZIP64_MAGIC;
+
+/**
+ * Writes a zip file from either already compressed entries, which are copied verbatim
+ * with their original CRC and sizes, or uncompressed data which is compressed with
+ * the configured level, either on the fly or beforehand by {@link #compress}.
+ * Local headers always carry the CRC and sizes, so no data descriptor is written.
+ */
+final class RawZipWriter implements Closeable {
+
+    private static final int UTF8_FLAG = 0x800;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x8;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    /**
+     * Compression level used to store entries without compressing them.
+     */
+    static final int STORED_LEVEL = -2;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final OutputStream out;
+    private final List<RawZipEntry> central = new ArrayList<>();
+    private final int level;
+    private final int defaultTime = toDosTime(LocalDateTime.now());
+    private long written;
+
+    /**
+     * @param level a {@link Deflater} compression level, or {@link #STORED_LEVEL}
+     */
+    RawZipWriter(OutputStream out, int level) {
+        this.out = out;
+        this.level = level;
+    }
+
+    /**
+     * Copies an entry from another zip file without inflating it.
+     */
+    void copyRaw(RawZipReader source, RawZipEntry entry) throws IOException {
+        RawZipEntry copy = entry(entry.rawName, entry, entry.method, entry.crc, entry.compressedSize, entry.size);
+        writeLocalHeader(copy);
+        source.transferRaw(entry, new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                RawZipWriter.this.write(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * Deflates and writes the given data, using the metadata of <code>template</code> if not <code>null</code>.
+     */
+    void write(String name, RawZipEntry template, byte[] data) throws IOException {
+        write(compress(name, template, data, level));
+    }
+
+    /**
+     * Writes data compressed beforehand.
+     */
+    void write(Compressed compressed) throws IOException {
+        RawZipEntry template = compressed.template;
+        RawZipEntry entry = entry(template != null ? template.rawName : compressed.name.getBytes(StandardCharsets.UTF_8),
+                template, compressed.method, compressed.crc, compressed.data.length, compressed.size);
+        writeLocalHeader(entry);
+        write(compressed.data, 0, compressed.data.length);
+    }
+
+    /**
+     * Compresses the given data into an independent buffer, so that entries can be
+     * compressed concurrently before being written sequentially.
+     */
+    static Compressed compress(String name, RawZipEntry template, byte[] data, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (level == STORED_LEVEL) {
+            return new Compressed(name, template, RawZipEntry.STORED, crc.getValue(), data.length, data);
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            baos.write(buffer, 0, n);
+        }
+        return new Compressed(name, template, RawZipEntry.DEFLATED, crc.getValue(), data.length, baos.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void finish() throws IOException {
+        long cdOffset = written;
+        for (RawZipEntry entry : central) {
+            writeCentralHeader(entry);
+        }
+        long cdSize = written - cdOffset;
+        int count = central.size();
+        if (count >= 0xFFFF || cdOffset >= ZIP64_MAGIC || cdSize >= ZIP64_MAGIC) {
+            long zip64End = written;
+            ByteBuffer buf = buffer(56);
+            buf.putInt(ZIP64_END_SIG).putLong(44).putShort((short) VERSION_ZIP64).putShort((short) VERSION_ZIP64)
+                    .putInt(0).putInt(0).putLong(count).putLong(count).putLong(cdSize).putLong(cdOffset);
+            write(buf);
+            buf = buffer(20);
+            buf.putInt(ZIP64_LOCATOR_SIG).putInt(0).putLong(zip64End).putInt(1);
+            write(buf);
+        }
+        ByteBuffer buf = buffer(22);
+        buf.putInt(END_SIG).putShort((short) 0).putShort((short) 0)
+                .putShort((short) Math.min(count, 0xFFFF)).putShort((short) Math.min(count, 0xFFFF))
+                .putInt((int) Math.min(cdSize, ZIP64_MAGIC)).putInt((int) Math.min(cdOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        write(buf);
+        out.flush();
+    }
+
+    private RawZipEntry entry(byte[] rawName, RawZipEntry template, int method, long crc, long compressedSize, long size) {
+        int flags = template != null ? template.flags & ~DATA_DESCRIPTOR_FLAG : UTF8_FLAG;
+        return new RawZipEntry(rawName,
+                template != null ? template.versionMadeBy : VERSION,
+                flags,
+                method,
+                template != null ? template.dosTime : defaultTime,
+                crc, compressedSize, size,
+                template != null ? stripZip64(template.extra) : new byte[0],
+                template != null ? template.comment : new byte[0],
+                template != null ? template.internalAttributes : 0,
+                template != null ? template.externalAttributes : 0,
+                written);
+    }
+
+    private void writeLocalHeader(RawZipEntry entry) throws IOException {
+        boolean zip64 = entry.compressedSize >= ZIP64_MAGIC || entry.size >= ZIP64_MAGIC;
+        byte[] extra = zip64 ? concat(zip64Extra(entry.size, entry.compressedSize, -1), entry.extra) : entry.extra;
+        ByteBuffer buf = buffer(RawZipReader.LOCAL_HEADER_SIZE + entry.rawName.length + extra.length);
+        buf.putInt(LOCAL_HEADER_SIG)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) entry.flags)
+                .putShort((short) entry.method)
+                .putInt(entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : entry.size))
+                .putShort((short) entry.rawName.length)
+                .putShort((short) extra.length)
+                .put(entry.rawName)
+                .put(extra);
+        write(buf);
+        central.add(entry);
+    }
+
+    private void writeCentralHeader(RawZipEntry entry) throws IOException {
+        long size = entry.size >= ZIP64_MAGIC ? entry.size : -1;
+        long compressedSize = entry.compressedSize >= ZIP64_MAGIC ? entry.compressedSize : -1;
+        long offset = entry.localHeaderOffset >= ZIP64_MAGIC ? entry.localHeaderOffset : -1;
+        boolean zip64 = size >= 0 || compressedSize >= 0 || offset >= 0;
+        byte[] extra = zip64 ? concat(zip64Extra(size, compressedSize, offset), entry.extra) : entry.extra;
+        ByteBuffer buf = buffer(RawZipReader.CENTRAL_HEADER_SIZE + entry.rawName.length + extra.length + entry.comment.length);
+        buf.putInt(CENTRAL_HEADER_SIG)
+                .putShort((short) entry.versionMadeBy)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) entry.flags)
+                .putShort((short) entry.method)
+                .putInt(entry.dosTime)
+                .putInt((int) entry.crc)
+                .putInt((int) (compressedSize >= 0 ? ZIP64_MAGIC : entry.compressedSize))
+                .putInt((int) (size >= 0 ? ZIP64_MAGIC : entry.size))
+                .putShort((short) entry.rawName.length)
+                .putShort((short) extra.length)
+                .putShort((short) entry.comment.length)
+                .putShort((short) 0)
+                .putShort((short) entry.internalAttributes)
+                .putInt((int) entry.externalAttributes)
+                .putInt((int) (offset >= 0 ? ZIP64_MAGIC : entry.localHeaderOffset))
+                .put(entry.rawName)
+                .put(extra)
+                .put(entry.comment);
+        write(buf);
+    }
+
+    /**
+     * Builds a zip64 extra field holding the given values, skipping negative ones.
+     */
+    private static byte[] zip64Extra(long size, long compressedSize, long offset) {
+        int len = (size >= 0 ? 8 : 0) + (compressedSize >= 0 ? 8 : 0) + (offset >= 0 ? 8 : 0);
+        ByteBuffer buf = buffer(4 + len);
+        buf.putShort((short) ZIP64_EXTRA_ID).putShort((short) len);
+        for (long value : new long[] { size, compressedSize, offset }) {
+            if (value >= 0) {
+                buf.putLong(value);
+            }
+        }
+        return buf.array();
+    }
+
+    /**
+     * Removes zip64 information from an extra field, as it is recomputed when writing.
+     */
+    private static byte[] stripZip64(byte[] extra) {
+        ByteBuffer in = ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(extra.length);
+        while (in.remaining() >= 4) {
+            int start = in.position();
+            int id = in.getShort() & 0xFFFF;
+            int len = in.getShort() & 0xFFFF;
+            if (start + 4 + len > extra.length) {
+                break;
+            }
+            if (id != ZIP64_EXTRA_ID) {
+                out.write(extra, start, 4 + len);
+            }
+            // Called on Buffer, ByteBuffer.position(int) does not exist on JDK 8
+            ((Buffer) in).position(start + 4 + len);
+        }
+        return out.size() == extra.length ? extra : out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] r = new byte[a.length + b.length];
+        System.arraycopy(a, 0, r, 0, a.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        return r;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int toDosTime(LocalDateTime time) {
+        int year = time.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        write(buf.array(), 0, buf.position());
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    static final class Compressed {
+        final String name;
+        final RawZipEntry template;
+        final int method;
+        final long crc;
+        final long size;
+        final byte[] data;
+
+        Compressed(String name, RawZipEntry template, int method, long crc, long size, byte[] data) {
+            this.name = name;
+            this.template = template;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sidecar index written next to a translated jar, recording the hash of each
+ * input class so that unchanged classes can be reused by the next incremental run.
+ * <p>
+ * The first line holds the translator fingerprint, each following line holds a
+ * hash and an entry name separated by a space.
+ */
+class TranslationIndex {
+
+    private static final String HEADER = "jbit-index ";
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    static Path indexPath(Path jar) {
+        return jar.resolveSibling(jar.getFileName() + ".jbit-index");
+    }
+
+    /**
+     * Loads the index of the given jar, or returns an empty index if it does not exist
+     * or has been produced by a different translator.
+     */
+    static TranslationIndex load(Path jar, String fingerprint) throws IOException {
+        TranslationIndex index = new TranslationIndex();
+        Path path = indexPath(jar);
+        if (Files.isRegularFile(path) && Files.isRegularFile(jar)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                if (line != null && line.equals(HEADER + fingerprint)) {
+                    while ((line = reader.readLine()) != null) {
+                        int idx = line.indexOf(' ');
+                        if (idx > 0) {
+                            index.hashes.put(line.substring(idx + 1), line.substring(0, idx));
+                        }
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    void store(Path jar, String fingerprint) throws IOException {
+        Path path = indexPath(jar);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + fingerprint);
+            writer.newLine();
+            for (Map.Entry<String, String> entry : new TreeMap<>(hashes).entrySet()) {
+                writer.write(entry.getValue() + " " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        // A partially written index must never be read
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    boolean isEmpty() {
+        return hashes.isEmpty();
+    }
+
+    String get(String name) {
+        return hashes.get(name);
+    }
+
+    void put(String name, String hash) {
+        hashes.put(name, hash);
+    }
+
+    static String hash(byte[] data) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : DIGEST.get().digest(data)) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.runtime;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hit counters of the call sites rewritten by a translator counting calls, each site being
+ * registered at translation time and identified by its index in {@link #counts}.
+ * <p>
+ * Instrumented call sites increment their counter without any synchronization, so that counting
+ * stays cheap on hot paths: concurrent calls to the same site may lose increments, and the
+ * counts are only approximate.
+ */
+public final class CallSiteCounters {
+
+    /**
+     * Hit count per call site ID, incremented inline by the instrumented call sites.
+     * The array is replaced by a larger copy when more sites are registered.
+     */
+    public static volatile long[] counts = new long[256];
+
+    private static final List<String> METHODS = new ArrayList<>();
+    private static final List<String> CALLERS = new ArrayList<>();
+
+    private CallSiteCounters() {
+    }
+
+    /**
+     * Registers a call site and returns its ID.
+     *
+     * @param method the substituted method, as <code>owner.name(descriptor)</code>
+     * @param caller the calling method and line
+     */
+    public static synchronized int register(String method, String caller) {
+        int id = METHODS.size();
+        METHODS.add(method);
+        CALLERS.add(caller);
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of calls per caller, per substituted method, sorted by decreasing number of calls.
+     * Call sites which have never been executed are left out.
+     */
+    public static synchronized Map<String, Map<String, Long>> getCounts() {
+        long[] counts = CallSiteCounters.counts;
+        Map<String, Map<String, Long>> sites = new TreeMap<>();
+        Map<String, Long> totals = new TreeMap<>();
+        for (int i = 0; i < METHODS.size(); i++) {
+            if (counts[i] > 0) {
+                sites.computeIfAbsent(METHODS.get(i), k -> new TreeMap<>()).merge(CALLERS.get(i), counts[i], Long::sum);
+                totals.merge(METHODS.get(i), counts[i], Long::sum);
+            }
+        }
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+        totals.entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
+                .forEach(e -> result.put(e.getKey(), sortByCount(sites.get(e.getKey()))));
+        return result;
+    }
+
+    public static synchronized void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Prints the number of calls to each substituted method, followed by its callers.
+     */
+    public static void dump(PrintStream out) {
+        out.println("jbit: calls to substituted methods");
+        for (Map.Entry<String, Map<String, Long>> method : getCounts().entrySet()) {
+            long total = method.getValue().values().stream().mapToLong(Long::longValue).sum();
+            out.printf("%14d  %s%n", total, method.getKey());
+            for (Map.Entry<String, Long> caller : method.getValue().entrySet()) {
+                out.printf("%14d      %s%n", caller.getValue(), caller.getKey());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Dumps the counters when the JVM exits, to the given file or, if <code>null</code>, to the standard error.
+     */
+    public static void dumpOnExit(Path file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (file == null) {
+                dump(System.err);
+                return;
+            }
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+                dump(out);
+            } catch (IOException e) {
+                System.err.println("jbit: unable to write call counters to " + file + ": " + e);
+            }
+        }, "jbit-call-counters"));
+    }
+
+    private static Map<String, Long> sortByCount(Map<String, Long> counts) {
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+}
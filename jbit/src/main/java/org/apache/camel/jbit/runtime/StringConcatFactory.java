@@ -21,11 +21,14 @@ import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
@@ -35,22 +38,26 @@ import sun.misc.Unsafe;
 @SuppressWarnings("unused")
 public class StringConcatFactory {
 
-    private static final char TAG_ARG = '\u0001';
-    private static final char TAG_CONST = '\u0002';
     private static final String METHOD_NAME = "concat";
     private static final Unsafe UNSAFE = getUnsafe();
-    private static final String STRING = "java/lang/String";
-    private static final String STRING_TYPE = "L" + STRING + ";";
-    private static final String STRING_BUILDER = "java/lang/StringBuilder";
-    private static final String STRING_BUILDER_TYPE = "L" + STRING_BUILDER + ";";
     private static final String OBJECT = "java/lang/Object";
-    private static final String OBJECT_TYPE = "L" + OBJECT + ";";
+    private static final String CLASS_NAME = StringConcatFactory.class.getName().replace('.', '/') + "$$StringConcat";
+
+    // Generated concat methods by adapted type and recipe elements, shared by the call sites with the same shape.
+    // The generated classes only reference JDK classes, so they are hosted by this class instead of the class
+    // of the call site, and only kept while a call site still uses them.
+    private static final ConcurrentMap<List<Object>, ConcatMethod> CONCAT_METHODS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<MethodHandle> UNUSED_CONCAT_METHODS = new ReferenceQueue<>();
+
+    // Number of calls after which a call site is relinked from the generic implementation to a generated class,
+    // the same as the C1 compilation threshold of tiered HotSpot, or 0 to always link to generated classes
+    static final int TIERED_THRESHOLD = Integer.getInteger("jbit.concat.threshold", 200);
 
     public static CallSite makeConcat(MethodHandles.Lookup lookup,
                                       String name,
                                       MethodType concatType) throws StringConcatException {
         char[] value = new char[concatType.parameterCount()];
-        Arrays.fill(value, TAG_ARG);
+        Arrays.fill(value, StringConcatGenerator.TAG_ARG);
         String recipe = new String(value);
         return createCallSite(lookup, name, concatType, recipe);
     }
@@ -69,49 +76,12 @@ public class StringConcatFactory {
                                            String rec,
                                            Object... constants) throws StringConcatException {
         try {
-            String className = lookup.lookupClass().getName().replace('.', '/') + "$$StringConcat";
-            MethodType args = adaptType(concatType);
-            List<RecipeElement> elements = createRecipe(rec, constants);
-            // Define class
-            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS + ClassWriter.COMPUTE_FRAMES);
-            cw.visit(Opcodes.V1_8, Opcodes.ACC_SUPER + Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL + Opcodes.ACC_SYNTHETIC,
-                    className, null, OBJECT, null);
-            // Define method
-            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL,
-                    METHOD_NAME, args.toMethodDescriptorString(), null, null);
-            mv.visitAnnotation("Ljdk/internal/vm/annotation/ForceInline;", true);
-            mv.visitCode();
-            // Create code
-            Class<?>[] arr = args.parameterArray();
-            mv.visitTypeInsn(Opcodes.NEW, STRING_BUILDER);
-            mv.visitInsn(Opcodes.DUP);
-            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STRING_BUILDER, "<init>", "()V", false);
-            int off = 0;
-            for (RecipeElement el : elements) {
-                String desc;
-                if (el.getTag() == TAG_CONST) {
-                    mv.visitLdcInsn(el.getValue());
-                    desc = getSBAppendDesc(String.class);
-                } else {
-                    Class<?> cl = arr[el.getArgPos()];
-                    mv.visitVarInsn(getLoadOpcode(cl), off);
-                    off += getParameterSize(cl);
-                    desc = getSBAppendDesc(cl);
-                }
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "append", desc, false);
+            List<Object> elements = StringConcatGenerator.parse(rec, constants);
+            if (TIERED_THRESHOLD > 0) {
+                StringConcatStatistics.tiered();
+                return new TieredCallSite(lookup.lookupClass(), rec, concatType, elements);
             }
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "toString", "()L" + STRING + ";", false );
-            mv.visitInsn(Opcodes.ARETURN);
-            mv.visitMaxs(-1, -1);
-            mv.visitEnd();
-            cw.visitEnd();
-
-            byte[] classBytes = cw.toByteArray();
-            Class<?> hostClass = lookup.lookupClass();
-            Class<?> innerClass = UNSAFE.defineAnonymousClass(hostClass, classBytes, null);
-            UNSAFE.ensureClassInitialized(innerClass);
-            MethodHandle mh = MethodHandles.lookup().findStatic(innerClass, METHOD_NAME, args);
-            return new ConstantCallSite(mh.asType(concatType));
+            return new ConstantCallSite(getConcatMethod(lookup.lookupClass(), rec, concatType, elements).asType(concatType));
         } catch (Error e) {
             throw e;
         } catch (Throwable t) {
@@ -119,6 +89,57 @@ public class StringConcatFactory {
         }
     }
 
+    /**
+     * Returns the generated concat method for the given call site, shared with the call sites of the same shape.
+     */
+    static MethodHandle getConcatMethod(Class<?> hostClass, String rec, MethodType concatType, List<Object> elements)
+            throws ReflectiveOperationException {
+        boolean timed = StringConcatStatistics.isActive();
+        long start = timed ? System.nanoTime() : 0;
+        MethodType args = adaptType(concatType);
+        List<Object> key = Arrays.asList(args, elements);
+        expungeUnusedConcatMethods();
+        ConcatMethod concatMethod = CONCAT_METHODS.get(key);
+        MethodHandle mh = concatMethod != null ? concatMethod.get() : null;
+        if (mh != null) {
+            if (timed) {
+                long now = System.nanoTime();
+                StringConcatStatistics.linked(hostClass, rec, concatType.toMethodDescriptorString(), true, 0, start, now, now);
+            }
+            return mh;
+        }
+        // Define class
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_SUPER + Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL + Opcodes.ACC_SYNTHETIC,
+                CLASS_NAME, null, OBJECT, null);
+        // Define method
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_FINAL,
+                METHOD_NAME, args.toMethodDescriptorString(), null, null);
+        mv.visitAnnotation("Ljdk/internal/vm/annotation/ForceInline;", true);
+        StringConcatGenerator.generate(mv, args.toMethodDescriptorString(), elements);
+        cw.visitEnd();
+
+        byte[] classBytes = cw.toByteArray();
+        long generated = timed ? System.nanoTime() : 0;
+        Class<?> innerClass = UNSAFE.defineAnonymousClass(StringConcatFactory.class, classBytes, null);
+        UNSAFE.ensureClassInitialized(innerClass);
+        mh = MethodHandles.lookup().findStatic(innerClass, METHOD_NAME, args);
+        // Concurrent bootstraps of the same shape may each define a class, the last one is shared afterwards
+        CONCAT_METHODS.put(key, new ConcatMethod(key, mh));
+        if (timed) {
+            StringConcatStatistics.linked(hostClass, rec, concatType.toMethodDescriptorString(), false, classBytes.length,
+                    start, generated, System.nanoTime());
+        }
+        return mh;
+    }
+
+    private static void expungeUnusedConcatMethods() {
+        ConcatMethod unused;
+        while ((unused = (ConcatMethod) UNUSED_CONCAT_METHODS.poll()) != null) {
+            CONCAT_METHODS.remove(unused.key, unused);
+        }
+    }
+
     private static MethodType adaptType(MethodType args) {
         Class<?>[] ptypes = args.parameterArray();
         for (int i = 0; i < args.parameterCount(); i++) {
@@ -130,29 +151,6 @@ public class StringConcatFactory {
         return MethodType.methodType(args.returnType(), ptypes);
     }
 
-    private static List<RecipeElement> createRecipe(String src, Object[] constants) {
-        List<RecipeElement> el = new ArrayList<>();
-        int constC = 0;
-        int argC = 0;
-        StringBuilder acc = new StringBuilder();
-        for (int i = 0; i < src.length(); i++) {
-            char c = src.charAt(i);
-            if (c == TAG_CONST || c == TAG_ARG) {
-                if (acc.length() > 0) {
-                    el.add(new RecipeElement(acc.toString()));
-                    acc.setLength(0);
-                }
-                el.add(c == TAG_CONST ? new RecipeElement(constants[constC++]) : new RecipeElement(argC++));
-            } else {
-                acc.append(c);
-            }
-        }
-        if (acc.length() > 0) {
-            el.add(new RecipeElement(acc.toString()));
-        }
-        return el;
-    }
-
     private static Unsafe getUnsafe() {
         try {
             Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
@@ -163,55 +161,81 @@ public class StringConcatFactory {
         }
     }
 
-    private static String getSBAppendDesc(Class<?> cl) {
-        if (cl.isPrimitive()) {
-            if (cl == Integer.TYPE || cl == Byte.TYPE || cl == Short.TYPE) {
-                return "(I)" + STRING_BUILDER_TYPE;
-            } else if (cl == Boolean.TYPE) {
-                return "(Z)" + STRING_BUILDER_TYPE;
-            } else if (cl == Character.TYPE) {
-                return "(C)" + STRING_BUILDER_TYPE;
-            } else if (cl == Double.TYPE) {
-                return "(D)" + STRING_BUILDER_TYPE;
-            } else if (cl == Float.TYPE) {
-                return "(F)" + STRING_BUILDER_TYPE;
-            } else if (cl == Long.TYPE) {
-                return "(J)" + STRING_BUILDER_TYPE;
-            } else {
-                throw new IllegalStateException("Unhandled primitive StringBuilder.append: " + cl);
+    /**
+     * A call site first linked to a generic concatenation of its boxed arguments, which does not need to generate
+     * any class, then relinked to the generated concat method once called {@link #TIERED_THRESHOLD} times.
+     */
+    static final class TieredCallSite extends MutableCallSite {
+        private static final MethodHandle CONCAT;
+
+        static {
+            try {
+                CONCAT = MethodHandles.lookup().findVirtual(TieredCallSite.class, "concat",
+                        MethodType.methodType(String.class, Object[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
             }
-        } else if (cl == String.class) {
-            return "(" + STRING_TYPE + ")" + STRING_BUILDER_TYPE;
-        } else {
-            return "(" + OBJECT_TYPE + ")" + STRING_BUILDER_TYPE;
         }
-    }
 
-    private static int getLoadOpcode(Class<?> c) {
-        if (c.isPrimitive()) {
-            if (c == Void.TYPE) {
-                throw new InternalError("Unexpected void type of load opcode");
-            } else if (c == Long.TYPE) {
-                return Opcodes.LLOAD;
-            } else if (c == Float.TYPE) {
-                return Opcodes.FLOAD;
-            } else if (c == Double.TYPE) {
-                return Opcodes.DLOAD;
-            } else {
-                return Opcodes.ILOAD;
+        private final Class<?> hostClass;
+        private final String recipe;
+        private final Object[] elements;
+        private final int capacity;
+        private int calls;
+        private volatile boolean relinked;
+
+        TieredCallSite(Class<?> hostClass, String recipe, MethodType concatType, List<Object> elements) {
+            super(concatType);
+            this.hostClass = hostClass;
+            this.recipe = recipe;
+            this.elements = elements.toArray();
+            int capacity = 0;
+            for (Object element : elements) {
+                capacity += element instanceof String ? ((String) element).length() : 16;
+            }
+            this.capacity = capacity;
+            setTarget(CONCAT.bindTo(this).asCollector(Object[].class, concatType.parameterCount()).asType(concatType));
+        }
+
+        String concat(Object[] args) {
+            // Calls are counted without synchronization, a few of them may be lost
+            if (!relinked && ++calls >= TIERED_THRESHOLD) {
+                relink();
+            }
+            StringBuilder sb = new StringBuilder(capacity);
+            for (Object element : elements) {
+                if (element instanceof String) {
+                    sb.append((String) element);
+                } else {
+                    sb.append(args[(Integer) element]);
+                }
+            }
+            return sb.toString();
+        }
+
+        private synchronized void relink() {
+            if (relinked) {
+                return;
+            }
+            relinked = true;
+            try {
+                setTarget(getConcatMethod(hostClass, recipe, type(), Arrays.asList(elements)).asType(type()));
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                // Keep the generic implementation, which is correct, only slower, also when ASM is not available
+                StringConcatStatistics.relinkFailed(hostClass, e);
             }
-        }  else {
-            return Opcodes.ALOAD;
         }
     }
 
-    private static int getParameterSize(Class<?> c) {
-        if (c == Void.TYPE) {
-            return 0;
-        } else if (c == Long.TYPE || c == Double.TYPE) {
-            return 2;
-        } else {
-            return 1;
+    /**
+     * A weak reference to a generated concat method, which is strongly referenced by the call sites linked to it.
+     */
+    private static final class ConcatMethod extends WeakReference<MethodHandle> {
+        final List<Object> key;
+
+        ConcatMethod(List<Object> key, MethodHandle mh) {
+            super(mh, UNUSED_CONCAT_METHODS);
+            this.key = key;
         }
     }
 
@@ -232,54 +256,4 @@ public class StringConcatFactory {
         }
     }
 
-    static final class RecipeElement {
-        private final String value;
-        private final int argPos;
-        private final char tag;
-
-        public RecipeElement(Object cnst) {
-            this.value = String.valueOf(Objects.requireNonNull(cnst));
-            this.argPos = -1;
-            this.tag = TAG_CONST;
-        }
-
-        public RecipeElement(int arg) {
-            this.value = null;
-            this.argPos = arg;
-            this.tag = TAG_ARG;
-        }
-
-        public String getValue() {
-            assert (tag == TAG_CONST);
-            return value;
-        }
-
-        public int getArgPos() {
-            assert (tag == TAG_ARG);
-            return argPos;
-        }
-
-        public char getTag() {
-            return tag;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            RecipeElement that = (RecipeElement) o;
-
-            if (this.tag != that.tag) return false;
-            if (this.tag == TAG_CONST && (!value.equals(that.value))) return false;
-            if (this.tag == TAG_ARG && (argPos != that.argPos)) return false;
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            return (int) tag;
-        }
-    }
-
 }
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates the code of static methods concatenating their arguments according to a
+ * <code>java.lang.invoke.StringConcatFactory</code> recipe, used both at runtime by the
+ * {@link StringConcatFactory} backport and at translation time to inline concatenations.
+ */
+public final class StringConcatGenerator {
+
+    public static final char TAG_ARG = '\u0001';
+    public static final char TAG_CONST = '\u0002';
+
+    private static final String STRING = "java/lang/String";
+    private static final String STRING_BUILDER = "java/lang/StringBuilder";
+    // Chunks of literal text are loaded with ldc, whose modified UTF-8 encoding is limited to 65535 bytes
+    private static final int MAX_LDC_LENGTH = 65535 / 3;
+    // Initial capacity reserved for an argument whose string length is unknown, the StringBuilder default
+    private static final int OBJECT_LENGTH = 16;
+
+    private StringConcatGenerator() {
+    }
+
+    /**
+     * Parses a recipe, folding the constants into the surrounding literal text.
+     *
+     * @return the elements of the concatenation, a <code>String</code> for literal text
+     *         or an <code>Integer</code> for the index of an argument
+     */
+    public static List<Object> parse(String recipe, Object[] constants) {
+        List<Object> elements = new ArrayList<>();
+        int constC = 0;
+        int argC = 0;
+        StringBuilder acc = new StringBuilder();
+        for (int i = 0; i < recipe.length(); i++) {
+            char c = recipe.charAt(i);
+            if (c == TAG_CONST) {
+                acc.append(String.valueOf(Objects.requireNonNull(constants[constC++])));
+            } else if (c == TAG_ARG) {
+                if (acc.length() > 0) {
+                    elements.add(acc.toString());
+                    acc.setLength(0);
+                }
+                elements.add(argC++);
+            } else {
+                acc.append(c);
+            }
+        }
+        if (acc.length() > 0) {
+            elements.add(acc.toString());
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the elements of a recipe made of the given number of arguments only.
+     */
+    public static List<Object> arguments(int count) {
+        List<Object> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(i);
+        }
+        return elements;
+    }
+
+    /**
+     * Generates the code of a static method with the given descriptor, whose parameters are the
+     * concatenated arguments, returning the concatenation of the given elements.
+     */
+    public static void generate(MethodVisitor mv, String descriptor, List<Object> elements) {
+        Type[] args = Type.getArgumentTypes(descriptor);
+        int[] locals = new int[args.length];
+        int maxLocals = 0;
+        for (int i = 0; i < args.length; i++) {
+            locals[i] = maxLocals;
+            maxLocals += args[i].getSize();
+        }
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, STRING_BUILDER);
+        mv.visitInsn(Opcodes.DUP);
+        pushCapacity(mv, args, locals, elements);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STRING_BUILDER, "<init>", "(I)V", false);
+        for (Object element : elements) {
+            if (element instanceof String) {
+                String value = (String) element;
+                for (int start = 0; start < value.length(); start += MAX_LDC_LENGTH) {
+                    mv.visitLdcInsn(value.substring(start, Math.min(value.length(), start + MAX_LDC_LENGTH)));
+                    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "append", "(L" + STRING + ";)L" + STRING_BUILDER + ";", false);
+                }
+            } else {
+                int arg = (Integer) element;
+                mv.visitVarInsn(args[arg].getOpcode(Opcodes.ILOAD), locals[arg]);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "append", getAppendDescriptor(args[arg]), false);
+            }
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER, "toString", "()L" + STRING + ";", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        // Two builder references, the capacity, and a string argument whose length is added
+        mv.visitMaxs(4, maxLocals);
+        mv.visitEnd();
+    }
+
+    /**
+     * Pushes the initial capacity of the builder: the length of the literal text, plus the actual length of the
+     * string arguments and the maximum length of the primitive ones, so that the builder never grows
+     * unless objects with long string representations are appended.
+     */
+    private static void pushCapacity(MethodVisitor mv, Type[] args, int[] locals, List<Object> elements) {
+        int capacity = 0;
+        for (Object element : elements) {
+            if (element instanceof String) {
+                capacity += ((String) element).length();
+            } else if (!isString(args[(Integer) element])) {
+                capacity += getMaxLength(args[(Integer) element]);
+            }
+        }
+        if (capacity <= Short.MAX_VALUE) {
+            mv.visitIntInsn(capacity <= Byte.MAX_VALUE ? Opcodes.BIPUSH : Opcodes.SIPUSH, capacity);
+        } else {
+            mv.visitLdcInsn(capacity);
+        }
+        boolean strings = false;
+        for (Object element : elements) {
+            if (element instanceof Integer && isString(args[(Integer) element])) {
+                // String.valueOf returns "null" for null, avoiding any branch, and thus any frame
+                mv.visitVarInsn(Opcodes.ALOAD, locals[(Integer) element]);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, STRING, "valueOf", "(Ljava/lang/Object;)L" + STRING + ";", false);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING, "length", "()I", false);
+                mv.visitInsn(Opcodes.IADD);
+                strings = true;
+            }
+        }
+        if (strings) {
+            // A sum of huge strings may overflow, let the builder fail when growing instead
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "max", "(II)I", false);
+        }
+    }
+
+    private static int getMaxLength(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return 5;  // false
+            case Type.CHAR:
+                return 1;
+            case Type.BYTE:
+                return 4;  // -128
+            case Type.SHORT:
+                return 6;  // -32768
+            case Type.INT:
+                return 11; // -2147483648
+            case Type.LONG:
+                return 20; // -9223372036854775808
+            case Type.FLOAT:
+                return 15; // -1.17549435E-38
+            case Type.DOUBLE:
+                return 24; // -2.2250738585072014E-308
+            default:
+                return OBJECT_LENGTH;
+        }
+    }
+
+    private static boolean isString(Type type) {
+        return type.getSort() == Type.OBJECT && type.getInternalName().equals(STRING);
+    }
+
+    private static String getAppendDescriptor(Type type) {
+        String arg;
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                arg = "Z";
+                break;
+            case Type.CHAR:
+                arg = "C";
+                break;
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.INT:
+                arg = "I";
+                break;
+            case Type.LONG:
+                arg = "J";
+                break;
+            case Type.FLOAT:
+                arg = "F";
+                break;
+            case Type.DOUBLE:
+                arg = "D";
+                break;
+            default:
+                // Appending an Object has the String.valueOf semantics expected for any other reference, including arrays
+                arg = isString(type) ? "L" + STRING + ";" : "Ljava/lang/Object;";
+                break;
+        }
+        return "(" + arg + ")L" + STRING_BUILDER + ";";
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.runtime;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a call site linked by the {@link StringConcatFactory} backport.
+ * Only loaded when the JVM supports JFR.
+ * <p>
+ * The event is committed once the call site is linked and has no duration of its own,
+ * only the generation and definition timespans are meaningful.
+ */
+@Name("org.apache.camel.jbit.StringConcatLinkage")
+@Label("String Concat Linkage")
+@Category({"jbit", "Runtime"})
+@Description("Call site linked by the jbit StringConcatFactory backport")
+@StackTrace(false)
+public final class StringConcatLinkageEvent extends Event {
+
+    @Label("Host Class")
+    Class<?> hostClass;
+
+    @Label("Recipe")
+    String recipe;
+
+    @Label("Concat Type")
+    String concatType;
+
+    @Label("Shared")
+    @Description("Whether the call site reuses a class generated for another call site")
+    boolean shared;
+
+    @Label("Bytecode Size")
+    int bytecodeSize;
+
+    @Label("Generation Time")
+    @Timespan
+    long generationTime;
+
+    @Label("Definition Time")
+    @Timespan
+    long definitionTime;
+
+    /**
+     * Returns <code>true</code> if the event is enabled in a running recording.
+     */
+    static boolean isActive() {
+        return new StringConcatLinkageEvent().isEnabled();
+    }
+
+    static void commit(Class<?> hostClass, String recipe, String concatType, boolean shared, int bytecodeSize,
+                       long generationTime, long definitionTime) {
+        StringConcatLinkageEvent event = new StringConcatLinkageEvent();
+        if (event.shouldCommit()) {
+            event.hostClass = hostClass;
+            event.recipe = recipe;
+            event.concatType = concatType;
+            event.shared = shared;
+            event.bytecodeSize = bytecodeSize;
+            event.generationTime = generationTime;
+            event.definitionTime = definitionTime;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.runtime;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics about the call sites linked by the {@link StringConcatFactory} backport, recorded when the
+ * <code>jbit.concat.statistics</code> system property is <code>true</code>.
+ * <p>
+ * When the JVM supports JFR, each linkage is also reported as an <code>org.apache.camel.jbit.StringConcatLinkage</code>
+ * event while this event is enabled in a recording, whether statistics are enabled or not.
+ */
+public final class StringConcatStatistics {
+
+    private static final boolean ENABLED = Boolean.getBoolean("jbit.concat.statistics");
+    private static final boolean JFR = isJfrAvailable();
+
+    private static final LongAdder CALL_SITES = new LongAdder();
+    private static final LongAdder SHARED_CALL_SITES = new LongAdder();
+    private static final LongAdder TIERED_CALL_SITES = new LongAdder();
+    private static final LongAdder GENERATION_NANOS = new LongAdder();
+    private static final LongAdder DEFINITION_NANOS = new LongAdder();
+    private static final LongAdder GENERATED_BYTES = new LongAdder();
+    private static final LongAdder RELINK_FAILURES = new LongAdder();
+    private static final AtomicBoolean RELINK_FAILURE_REPORTED = new AtomicBoolean();
+    private static final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> RECIPES = new ConcurrentHashMap<>();
+
+    private StringConcatStatistics() {
+    }
+
+    /**
+     * Returns <code>true</code> if a linkage must be timed, either to record statistics or because
+     * the JFR event is enabled. Called once per linkage, so that recordings started later are honored.
+     */
+    static boolean isActive() {
+        return ENABLED || JFR && StringConcatLinkageEvent.isActive();
+    }
+
+    /**
+     * Records a call site first linked to the generic implementation, which is recorded
+     * again as linked if it is called often enough to be relinked to a generated class.
+     */
+    static void tiered() {
+        if (ENABLED) {
+            TIERED_CALL_SITES.increment();
+        }
+    }
+
+    /**
+     * Records a linked call site, <code>shared</code> if it reuses the class generated for another call site,
+     * in which case <code>bytecodeSize</code> is 0.
+     */
+    static void linked(Class<?> hostClass, String recipe, String concatType, boolean shared, int bytecodeSize,
+                       long start, long generated, long defined) {
+        if (ENABLED) {
+            CALL_SITES.increment();
+            if (shared) {
+                SHARED_CALL_SITES.increment();
+            }
+            GENERATION_NANOS.add(generated - start);
+            DEFINITION_NANOS.add(defined - generated);
+            GENERATED_BYTES.add(bytecodeSize);
+            RECIPES.computeIfAbsent(hostClass.getName(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(display(recipe), k -> new LongAdder())
+                    .increment();
+        }
+        if (JFR && StringConcatLinkageEvent.isActive()) {
+            StringConcatLinkageEvent.commit(hostClass, display(recipe), concatType, shared, bytecodeSize,
+                    generated - start, defined - generated);
+        }
+    }
+
+    /**
+     * Records a tiered call site which could not be relinked to a generated class and keeps the generic
+     * implementation. The first failure is reported on the standard error, whether statistics are enabled or not.
+     */
+    static void relinkFailed(Class<?> hostClass, Throwable failure) {
+        if (ENABLED) {
+            RELINK_FAILURES.increment();
+        }
+        if (RELINK_FAILURE_REPORTED.compareAndSet(false, true)) {
+            System.err.println("jbit: unable to generate the string concatenation of " + hostClass.getName()
+                    + ", keeping the generic implementation for this and any other failing call site: " + failure);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the number of call sites linked to a generated class.
+     */
+    public static long getLinkedCallSites() {
+        return CALL_SITES.sum();
+    }
+
+    /**
+     * Returns the number of call sites linked to a class already generated for another call site
+     * with the same recipe and argument types.
+     */
+    public static long getSharedCallSites() {
+        return SHARED_CALL_SITES.sum();
+    }
+
+    /**
+     * Returns the number of call sites first linked to the generic implementation,
+     * before being relinked to a generated class once called often enough.
+     */
+    public static long getTieredCallSites() {
+        return TIERED_CALL_SITES.sum();
+    }
+
+    /**
+     * Returns the number of tiered call sites which could not be relinked to a generated class.
+     */
+    public static long getRelinkFailures() {
+        return RELINK_FAILURES.sum();
+    }
+
+    /**
+     * Returns the time spent generating the bytecode of the concat classes, in nanoseconds.
+     */
+    public static long getGenerationNanos() {
+        return GENERATION_NANOS.sum();
+    }
+
+    /**
+     * Returns the time spent defining and linking the concat classes, in nanoseconds.
+     */
+    public static long getDefinitionNanos() {
+        return DEFINITION_NANOS.sum();
+    }
+
+    public static long getGeneratedBytes() {
+        return GENERATED_BYTES.sum();
+    }
+
+    /**
+     * Returns the number of linked call sites per recipe, per host class name.
+     * Arguments are shown as <code>\1</code> and constants as <code>\2</code> in the recipes.
+     */
+    public static Map<String, Map<String, Long>> getRecipes() {
+        Map<String, Map<String, Long>> recipes = new TreeMap<>();
+        RECIPES.forEach((host, counts) -> {
+            Map<String, Long> snapshot = new TreeMap<>();
+            counts.forEach((recipe, count) -> snapshot.put(recipe, count.sum()));
+            recipes.put(host, Collections.unmodifiableMap(snapshot));
+        });
+        return Collections.unmodifiableMap(recipes);
+    }
+
+    public static void reset() {
+        CALL_SITES.reset();
+        SHARED_CALL_SITES.reset();
+        TIERED_CALL_SITES.reset();
+        GENERATION_NANOS.reset();
+        DEFINITION_NANOS.reset();
+        GENERATED_BYTES.reset();
+        RELINK_FAILURES.reset();
+        RECIPES.clear();
+    }
+
+    private static String display(String recipe) {
+        return recipe.replace("\u0001", "\\1").replace("\u0002", "\\2");
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, StringConcatStatistics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+}
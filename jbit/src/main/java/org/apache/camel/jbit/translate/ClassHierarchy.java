@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Index of super classes used to compute stack map frames without loading any class.
+ * <p>
+ * Class files are located by a {@link ClassFileLocator} and only their header is parsed.
+ * Lookups are cached, so a single instance can be built once and shared by all the threads
+ * translating the same set of classes. A parent hierarchy, usually {@link #jdk()}, is
+ * consulted first.
+ */
+public class ClassHierarchy {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final ClassInfo UNKNOWN = new ClassInfo(null, 0);
+    private static final ClassHierarchy JDK = new ClassHierarchy(null, forClassLoader(null));
+
+    @FunctionalInterface
+    public interface ClassFileLocator {
+        /**
+         * Returns the class file for the given internal name, or <code>null</code> if it can not be found.
+         */
+        byte[] locate(String internalName) throws IOException;
+    }
+
+    private final ClassHierarchy parent;
+    private final ClassFileLocator locator;
+    private final ConcurrentMap<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+    public ClassHierarchy(ClassHierarchy parent, ClassFileLocator locator) {
+        this.parent = parent;
+        this.locator = locator;
+    }
+
+    /**
+     * Returns the shared hierarchy of the classes of the running JDK.
+     */
+    public static ClassHierarchy jdk() {
+        return JDK;
+    }
+
+    /**
+     * Returns a locator reading class files as resources of the given class loader,
+     * or of the JDK classes if <code>null</code>. The class loader is weakly referenced.
+     */
+    public static ClassFileLocator forClassLoader(ClassLoader loader) {
+        if (loader == null) {
+            // the platform class loader, or the extension class loader on JDK 8, only sees JDK classes
+            loader = ClassLoader.getSystemClassLoader().getParent();
+        }
+        WeakReference<ClassLoader> ref = new WeakReference<>(loader);
+        return name -> {
+            ClassLoader cl = ref.get();
+            if (cl == null) {
+                return null;
+            }
+            try (InputStream is = cl.getResourceAsStream(name + ".class")) {
+                if (is == null) {
+                    return null;
+                }
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer, 0, buffer.length)) >= 0) {
+                    baos.write(buffer, 0, read);
+                }
+                return baos.toByteArray();
+            }
+        };
+    }
+
+    /**
+     * Registers a class which may not be found by the locator, such as the class being translated.
+     */
+    public void add(String name, String superName, int access) {
+        classes.put(name, new ClassInfo(superName, access));
+    }
+
+    /**
+     * Same contract as <code>ClassWriter.getCommonSuperClass</code>, using the indexed class files
+     * only. <code>java/lang/Object</code> is returned when one of the types is an interface, as
+     * the verifier handles interfaces as <code>java/lang/Object</code>.
+     * @throws TypeNotPresentException if a type or one of its super classes can not be found
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        ClassInfo info1 = getKnown(type1);
+        ClassInfo info2 = getKnown(type2);
+        if (info1.isInterface() || info2.isInterface()) {
+            return OBJECT;
+        }
+        Set<String> supers = new HashSet<>();
+        for (String t = type2; t != null; t = getKnown(t).superName) {
+            if (t.equals(type1)) {
+                return type1;
+            }
+            supers.add(t);
+        }
+        for (String t = type1; t != null; t = getKnown(t).superName) {
+            if (supers.contains(t)) {
+                return t;
+            }
+        }
+        return OBJECT;
+    }
+
+    private ClassInfo getKnown(String name) {
+        ClassInfo info = get(name);
+        if (info == UNKNOWN) {
+            throw new TypeNotPresentException(name.replace('/', '.'), null);
+        }
+        return info;
+    }
+
+    private ClassInfo get(String name) {
+        if (parent != null) {
+            ClassInfo info = parent.get(name);
+            if (info != UNKNOWN) {
+                return info;
+            }
+        }
+        ClassInfo info = classes.get(name);
+        if (info == null) {
+            info = load(name);
+            ClassInfo prev = classes.putIfAbsent(name, info);
+            if (prev != null) {
+                info = prev;
+            }
+        }
+        return info;
+    }
+
+    private ClassInfo load(String name) {
+        try {
+            byte[] data = locator.locate(name);
+            return data != null ? parseHeader(data) : UNKNOWN;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * Reads the access flags and super class from the class header, without any version check
+     * so that class files newer than the ASM version in use can be indexed.
+     */
+    static ClassInfo parseHeader(byte[] b) {
+        int count = readUnsignedShort(b, 8);
+        int[] offsets = new int[count];
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset + 1;
+            switch (b[offset]) {
+                case 1: // Utf8
+                    offset += 3 + readUnsignedShort(b, offset + 1);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    offset += 9;
+                    i++;
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    offset += 5;
+                    break;
+                case 15: // MethodHandle
+                    offset += 4;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    offset += 3;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid constant pool tag " + b[offset]);
+            }
+        }
+        int access = readUnsignedShort(b, offset);
+        int superClass = readUnsignedShort(b, offset + 4);
+        String superName = null;
+        if (superClass != 0) {
+            int utf8 = offsets[readUnsignedShort(b, offsets[superClass])];
+            superName = readUtf8(b, utf8 + 2, readUnsignedShort(b, utf8));
+        }
+        return new ClassInfo(superName, access);
+    }
+
+    private static int readUnsignedShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static String readUtf8(byte[] b, int offset, int length) {
+        char[] chars = new char[length];
+        int n = 0;
+        int end = offset + length;
+        while (offset < end) {
+            int c = b[offset++] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char) c;
+            } else if (c < 0xE0) {
+                chars[n++] = (char) (((c & 0x1F) << 6) | (b[offset++] & 0x3F));
+            } else {
+                chars[n++] = (char) (((c & 0x0F) << 12) | ((b[offset++] & 0x3F) << 6) | (b[offset++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    static final class ClassInfo {
+        final String superName;
+        final int access;
+
+        ClassInfo(String superName, int access) {
+            this.superName = superName;
+            this.access = access;
+        }
+
+        boolean isInterface() {
+            return (access & Opcodes.ACC_INTERFACE) != 0;
+        }
+    }
+
+}
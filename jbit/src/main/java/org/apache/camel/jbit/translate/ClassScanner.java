@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translate;
+
+import java.util.Arrays;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Cheap scan of a class file, without any ASM visitor, finding out whether a class
+ * needs to be translated, whether the rewrites preserve the existing frames, and
+ * which methods contain an instruction to rewrite.
+ */
+final class ClassScanner {
+
+    static final int NO_TRANSLATION = 0;
+    static final int PRESERVE_FRAMES = 1;
+    static final int COMPUTE_FRAMES = 2;
+
+    private static final int CONSTANT_METHODREF_TAG = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF_TAG = 11;
+    private static final int CONSTANT_METHOD_HANDLE_TAG = 15;
+    private static final int CONSTANT_INVOKE_DYNAMIC_TAG = 18;
+
+    private final ClassReader reader;
+    private final char[] buffer;
+    /** constant pool items referenced by an instruction which has to be rewritten */
+    private final boolean[] rewritten;
+    private final int translation;
+    private boolean[] rewrittenMethods;
+
+    ClassScanner(ClassReader reader, SubstitutionIndex substitutions, String stringConcatFactory) {
+        this.reader = reader;
+        this.buffer = new char[reader.getMaxStringLength()];
+        this.rewritten = new boolean[reader.getItemCount()];
+        int translation = NO_TRANSLATION;
+        boolean hasIndy = false;
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0) {
+                continue;
+            }
+            int tag = reader.readByte(offset - 1);
+            if (tag == CONSTANT_INVOKE_DYNAMIC_TAG) {
+                hasIndy = true;
+            } else if (tag == CONSTANT_METHODREF_TAG || tag == CONSTANT_INTERFACE_METHODREF_TAG) {
+                String owner = reader.readClass(offset, buffer);
+                if (stringConcatFactory.equals(owner)) {
+                    translation = Math.max(translation, PRESERVE_FRAMES);
+                    rewritten[i] = true;
+                } else if (substitutions.hasOwner(owner)) {
+                    int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+                    String name = reader.readUTF8(nameAndType, buffer);
+                    if (substitutions.hasMethod(owner, name)) {
+                        String descriptor = reader.readUTF8(nameAndType + 2, buffer);
+                        Substitution substitution = substitutions.find(owner, name, descriptor);
+                        if (substitution != null) {
+                            translation = substitution.isShapePreserving()
+                                    ? Math.max(translation, PRESERVE_FRAMES) : COMPUTE_FRAMES;
+                            rewritten[i] = true;
+                        }
+                    }
+                }
+            }
+        }
+        // Flag the invokedynamic items bootstrapped by the StringConcatFactory
+        if (hasIndy && translation != NO_TRANSLATION) {
+            int[] bootstrapMethods = readBootstrapMethods();
+            for (int i = 1; i < reader.getItemCount(); i++) {
+                int offset = reader.getItem(i);
+                if (offset != 0 && reader.readByte(offset - 1) == CONSTANT_INVOKE_DYNAMIC_TAG) {
+                    int bsm = reader.readUnsignedShort(offset);
+                    if (bsm < bootstrapMethods.length) {
+                        int handle = reader.getItem(reader.readUnsignedShort(bootstrapMethods[bsm]));
+                        if (reader.readByte(handle - 1) == CONSTANT_METHOD_HANDLE_TAG
+                                && rewritten[reader.readUnsignedShort(handle + 1)]) {
+                            rewritten[i] = true;
+                        }
+                    }
+                }
+            }
+        }
+        this.translation = translation;
+    }
+
+    /**
+     * @return {@link #NO_TRANSLATION}, {@link #PRESERVE_FRAMES} or {@link #COMPUTE_FRAMES}
+     */
+    int getTranslation() {
+        return translation;
+    }
+
+    /**
+     * Returns whether the method at the given index, in class file order, contains an instruction to rewrite.
+     */
+    boolean isMethodRewritten(int index) {
+        if (rewrittenMethods == null) {
+            rewrittenMethods = scanMethods();
+        }
+        return index >= rewrittenMethods.length || rewrittenMethods[index];
+    }
+
+    private int skipMembers(int offset) {
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset = skipAttributes(offset + 6);
+        }
+        return offset;
+    }
+
+    private int skipAttributes(int offset) {
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    private int getMethodsOffset() {
+        int offset = reader.header + 6;
+        offset += 2 + 2 * reader.readUnsignedShort(offset);
+        return skipMembers(offset);
+    }
+
+    private int[] readBootstrapMethods() {
+        int offset = skipMembers(getMethodsOffset());
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            String name = reader.readUTF8(offset, buffer);
+            int length = reader.readInt(offset + 2);
+            if ("BootstrapMethods".equals(name)) {
+                int[] bootstrapMethods = new int[reader.readUnsignedShort(offset + 6)];
+                int bsm = offset + 8;
+                for (int j = 0; j < bootstrapMethods.length; j++) {
+                    bootstrapMethods[j] = bsm;
+                    bsm += 4 + 2 * reader.readUnsignedShort(bsm + 2);
+                }
+                return bootstrapMethods;
+            }
+            offset += 6 + length;
+        }
+        return new int[0];
+    }
+
+    private boolean[] scanMethods() {
+        int offset = getMethodsOffset();
+        boolean[] methods = new boolean[reader.readUnsignedShort(offset)];
+        offset += 2;
+        for (int i = 0; i < methods.length; i++) {
+            int count = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < count; j++) {
+                int length = reader.readInt(offset + 2);
+                if ("Code".equals(reader.readUTF8(offset, buffer))) {
+                    int codeLength = reader.readInt(offset + 10);
+                    methods[i] = scanCode(offset + 14, codeLength);
+                }
+                offset += 6 + length;
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Walks the bytecode looking for an invoke instruction referencing a rewritten item.
+     */
+    private boolean scanCode(int start, int length) {
+        int end = start + length;
+        int pc = start;
+        while (pc < end) {
+            int opcode = reader.readByte(pc);
+            switch (opcode) {
+                case 0xb6: // invokevirtual
+                case 0xb7: // invokespecial
+                case 0xb8: // invokestatic
+                case 0xb9: // invokeinterface
+                case 0xba: // invokedynamic
+                    if (rewritten[reader.readUnsignedShort(pc + 1)]) {
+                        return true;
+                    }
+                    pc += opcode >= 0xb9 ? 5 : 3;
+                    break;
+                case 0xaa: { // tableswitch
+                    int p = pc + 4 - ((pc - start) & 3);
+                    int low = reader.readInt(p + 4);
+                    int high = reader.readInt(p + 8);
+                    pc = p + 12 + 4 * (high - low + 1);
+                    break;
+                }
+                case 0xab: { // lookupswitch
+                    int p = pc + 4 - ((pc - start) & 3);
+                    pc = p + 8 + 8 * reader.readInt(p + 4);
+                    break;
+                }
+                case 0xc4: // wide
+                    pc += reader.readByte(pc + 1) == 0x84 ? 6 : 4;
+                    break;
+                default:
+                    pc += LENGTHS[opcode];
+                    break;
+            }
+        }
+        return false;
+    }
+
+    /** Length of the fixed size instructions */
+    private static final byte[] LENGTHS = new byte[256];
+
+    static {
+        Arrays.fill(LENGTHS, (byte) 1);
+        LENGTHS[0x10] = 2; // bipush
+        LENGTHS[0x11] = 3; // sipush
+        LENGTHS[0x12] = 2; // ldc
+        LENGTHS[0x13] = 3; // ldc_w
+        LENGTHS[0x14] = 3; // ldc2_w
+        for (int op = 0x15; op <= 0x19; op++) {
+            LENGTHS[op] = 2; // xload
+        }
+        for (int op = 0x36; op <= 0x3a; op++) {
+            LENGTHS[op] = 2; // xstore
+        }
+        LENGTHS[0x84] = 3; // iinc
+        for (int op = 0x99; op <= 0xa8; op++) {
+            LENGTHS[op] = 3; // if*, goto, jsr
+        }
+        LENGTHS[0xa9] = 2; // ret
+        for (int op = 0xb2; op <= 0xb5; op++) {
+            LENGTHS[op] = 3; // field access
+        }
+        LENGTHS[0xbb] = 3; // new
+        LENGTHS[0xbc] = 2; // newarray
+        LENGTHS[0xbd] = 3; // anewarray
+        LENGTHS[0xc0] = 3; // checkcast
+        LENGTHS[0xc1] = 3; // instanceof
+        LENGTHS[0xc5] = 4; // multianewarray
+        LENGTHS[0xc6] = 3; // ifnull
+        LENGTHS[0xc7] = 3; // ifnonnull
+        LENGTHS[0xc8] = 5; // goto_w
+        LENGTHS[0xc9] = 5; // jsr_w
+    }
+
+}
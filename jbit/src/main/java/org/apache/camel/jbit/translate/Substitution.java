@@ -20,6 +20,9 @@ import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -100,6 +103,40 @@ public class Substitution {
         return substitutions;
     }
 
+    /**
+     * Computes a stable hex digest identifying the given set of substitutions.
+     */
+    public static String fingerprint(Iterable<Substitution> substitutions) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Substitution s : substitutions) {
+                for (String str : new String[] { s.owner, s.name, s.descriptor, s.newOwner, s.newName, s.newDescriptor }) {
+                    digest.update(str.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if replacing the original invocation with a static invocation
+     * of the new method leaves the operand stack unchanged, so that existing frames stay valid.
+     */
+    public boolean isShapePreserving() {
+        if ("<init>".equals(name)) {
+            return false;
+        }
+        return newDescriptor.equals(descriptor)
+                || newDescriptor.equals("(L" + owner + ";" + descriptor.substring(1));
+    }
+
     public boolean matches(String owner, String name, String descriptor) {
         return Objects.equals(this.owner, owner)
                 && Objects.equals(this.name, name)
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable lookup of substitutions keyed on (owner, name, descriptor).
+ * Owners without any substitution are rejected with a single hash lookup.
+ */
+public final class SubstitutionIndex {
+
+    private final List<Substitution> substitutions;
+    private final Map<String, Map<String, Map<String, Substitution>>> byOwner;
+
+    public SubstitutionIndex(Iterable<Substitution> substitutions) {
+        List<Substitution> list = new ArrayList<>();
+        Map<String, Map<String, Map<String, Substitution>>> index = new HashMap<>();
+        for (Substitution s : substitutions) {
+            list.add(s);
+            index.computeIfAbsent(s.owner, k -> new HashMap<>())
+                    .computeIfAbsent(s.name, k -> new HashMap<>())
+                    .putIfAbsent(s.descriptor, s);
+        }
+        for (Map.Entry<String, Map<String, Map<String, Substitution>>> owner : index.entrySet()) {
+            for (Map.Entry<String, Map<String, Substitution>> name : owner.getValue().entrySet()) {
+                name.setValue(Collections.unmodifiableMap(name.getValue()));
+            }
+            owner.setValue(Collections.unmodifiableMap(owner.getValue()));
+        }
+        this.substitutions = Collections.unmodifiableList(list);
+        this.byOwner = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Returns the substitution for the given method, or <code>null</code> if there is none.
+     */
+    public Substitution find(String owner, String name, String descriptor) {
+        Map<String, Map<String, Substitution>> byName = byOwner.get(owner);
+        if (byName == null) {
+            return null;
+        }
+        Map<String, Substitution> byDescriptor = byName.get(name);
+        return byDescriptor != null ? byDescriptor.get(descriptor) : null;
+    }
+
+    public boolean hasOwner(String owner) {
+        return byOwner.containsKey(owner);
+    }
+
+    public boolean hasMethod(String owner, String name) {
+        Map<String, Map<String, Substitution>> byName = byOwner.get(owner);
+        return byName != null && byName.containsKey(name);
+    }
+
+    public Set<String> owners() {
+        return byOwner.keySet();
+    }
+
+    /**
+     * Returns the indexed substitutions, in their original order.
+     */
+    public List<Substitution> substitutions() {
+        return substitutions;
+    }
+
+}
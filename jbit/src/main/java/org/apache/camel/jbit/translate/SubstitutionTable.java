@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary table of the default substitutions, generated at build time into the <code>jbit</code> jar so that
+ * they are loaded without scanning the runtime classes with ASM.
+ * <p>
+ * The table is a string pool, followed by the substitutions as indexes in this pool:
+ * <pre>
+ *   int magic, int stringCount, utf[stringCount], int substitutionCount, (int owner, name, descriptor,
+ *   newOwner, newName, newDescriptor)[substitutionCount]
+ * </pre>
+ */
+public final class SubstitutionTable {
+
+    public static final String RESOURCE = "META-INF/jbit/substitutions";
+
+    private static final int MAGIC = 0x6a626974;
+
+    private SubstitutionTable() {
+    }
+
+    /**
+     * Returns the substitutions of the table generated at build time or, if it is missing,
+     * for instance when running from an IDE, the substitutions found in the given classes.
+     */
+    public static List<Substitution> load(Iterable<Class<?>> supportClasses) {
+        try (InputStream in = SubstitutionTable.class.getResourceAsStream("/" + RESOURCE)) {
+            if (in != null) {
+                return read(in);
+            }
+        } catch (IOException e) {
+            System.err.println("jbit: unable to read " + RESOURCE + ", scanning the runtime classes: " + e);
+        }
+        return Substitution.findSubstitutions(supportClasses);
+    }
+
+    public static List<Substitution> read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a substitution table");
+        }
+        String[] strings = new String[checkCount(in.readInt())];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        int count = checkCount(in.readInt());
+        List<Substitution> substitutions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            substitutions.add(new Substitution(string(strings, in), string(strings, in), string(strings, in),
+                    string(strings, in), string(strings, in), string(strings, in)));
+        }
+        return substitutions;
+    }
+
+    private static int checkCount(int count) throws IOException {
+        // Each entry takes at least 2 bytes, so larger counts can only come from a corrupt table
+        if (count < 0 || count > Integer.MAX_VALUE / 2) {
+            throw new IOException("Invalid count in substitution table: " + count);
+        }
+        return count;
+    }
+
+    private static String string(String[] strings, DataInputStream in) throws IOException {
+        int index = in.readInt();
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index in substitution table: " + index);
+        }
+        return strings[index];
+    }
+
+    public static void write(List<Substitution> substitutions, OutputStream output) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        for (Substitution s : substitutions) {
+            for (String str : new String[] { s.owner, s.name, s.descriptor, s.newOwner, s.newName, s.newDescriptor }) {
+                pool.putIfAbsent(str, pool.size());
+            }
+        }
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(MAGIC);
+        out.writeInt(pool.size());
+        for (String str : pool.keySet()) {
+            out.writeUTF(str);
+        }
+        out.writeInt(substitutions.size());
+        for (Substitution s : substitutions) {
+            for (String str : new String[] { s.owner, s.name, s.descriptor, s.newOwner, s.newName, s.newDescriptor }) {
+                out.writeInt(pool.get(str));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Build step scanning the runtime classes and writing the table into the given classes directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("USAGE: SubstitutionTable <classes directory>");
+            System.exit(1);
+        }
+        List<Substitution> substitutions = Substitution.findSubstitutions(Translator.SUBSTITUTION_CLASSES);
+        Path table = Paths.get(args[0]).resolve(RESOURCE);
+        Files.createDirectories(table.getParent());
+        try (OutputStream out = Files.newOutputStream(table)) {
+            write(substitutions, out);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translate;
+
+/**
+ * Receives the call sites rewritten while translating a class.
+ */
+@FunctionalInterface
+public interface TranslationListener {
+
+    /**
+     * Called for each rewritten call site, with the method originally called,
+     * or the bootstrap method for an invokedynamic instruction.
+     */
+    void rewritten(String owner, String name, String descriptor);
+
+    /**
+     * Called when the stack map frames of the given class are computed instead of being kept,
+     * which makes the translation depend on the class hierarchy.
+     */
+    default void framesComputed(String className) {
+    }
+
+}
@@ -16,25 +16,41 @@
  */
 package org.apache.camel.jbit.translate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import org.apache.camel.jbit.runtime.CallSiteCounters;
 import org.apache.camel.jbit.runtime.JavaIo;
 import org.apache.camel.jbit.runtime.JavaLang;
 import org.apache.camel.jbit.runtime.JavaNio;
 import org.apache.camel.jbit.runtime.JavaUtil;
 import org.apache.camel.jbit.runtime.JavaUtilStream;
 import org.apache.camel.jbit.runtime.StringConcatFactory;
+import org.apache.camel.jbit.runtime.StringConcatGenerator;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 public class Translator {
 
@@ -45,17 +61,112 @@ public class Translator {
             JavaUtil.class,
             JavaUtilStream.class
     );
-    private static final List<Substitution> SUBSTITUTIONS = Substitution.findSubstitutions(SUBSTITUTION_CLASSES);
-    private static final Translator TRANSLATOR = new Translator(SUBSTITUTIONS, false);
+    private static final List<Substitution> SUBSTITUTIONS = SubstitutionTable.load(SUBSTITUTION_CLASSES);
+    private static final SubstitutionIndex SUBSTITUTION_INDEX = new SubstitutionIndex(SUBSTITUTIONS);
+    private static final Translator TRANSLATOR = builder().build();
     private static final String STRING_CONCAT_FACTORY = "java/lang/invoke/StringConcatFactory";
     private static final String METHOD_HANDLES = "java/lang/invoke/MethodHandles";
+    private static final String CALL_SITE_COUNTERS = CallSiteCounters.class.getName().replace('.', '/');
 
-    private final List<Substitution> substitutions;
+    private final SubstitutionIndex substitutions;
     private final boolean force;
+    private final boolean preserveFrames;
+    private final boolean countCalls;
+    private final boolean inlineConcat;
 
     public Translator(List<Substitution> substitutions, boolean force) {
-        this.substitutions = substitutions;
-        this.force = force;
+        this(builder().substitutions(new SubstitutionIndex(substitutions)).force(force));
+    }
+
+    private Translator(Builder builder) {
+        this.substitutions = builder.substitutions;
+        this.force = builder.force;
+        this.preserveFrames = builder.preserveFrames;
+        this.countCalls = builder.countCalls;
+        this.inlineConcat = builder.inlineConcat;
+    }
+
+    /**
+     * Returns a builder of translators, initialized with the default substitutions and options.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the translator with the default substitutions used by the static methods.
+     */
+    public static Translator getDefault() {
+        return TRANSLATOR;
+    }
+
+    public SubstitutionIndex getSubstitutions() {
+        return substitutions;
+    }
+
+    /**
+     * Returns a digest identifying the substitutions, the jbit build and the options changing the
+     * translated classes, suitable to key persisted translation results.
+     */
+    public String getFingerprint() {
+        return fingerprint(substitutions.substitutions())
+                + (force ? "-force" : "")
+                + (preserveFrames ? "" : "-compute-frames")
+                + (countCalls ? "-count-calls" : "")
+                + (inlineConcat ? "-inline-concat" : "");
+    }
+
+    /**
+     * Returns a digest identifying the default substitutions and the jbit build,
+     * suitable to key persisted translation results.
+     */
+    public static String fingerprint() {
+        return fingerprint(SUBSTITUTIONS);
+    }
+
+    private static String fingerprint(Iterable<Substitution> substitutions) {
+        String version = Translator.class.getPackage().getImplementationVersion();
+        return Substitution.fingerprint(substitutions).substring(0, 16) + "-" + BuildDigest.VALUE
+                + (version != null ? "-" + version : "");
+    }
+
+    /**
+     * Digest of the jar or classes directory jbit is loaded from, computed once, so that results
+     * persisted by a different build of the same version, such as a snapshot, are not reused.
+     */
+    private static final class BuildDigest {
+        static final String VALUE = compute();
+
+        private static String compute() {
+            try {
+                CodeSource source = Translator.class.getProtectionDomain().getCodeSource();
+                if (source == null || source.getLocation() == null) {
+                    return "unknown";
+                }
+                Path location = Paths.get(source.getLocation().toURI());
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                List<Path> files = new ArrayList<>();
+                if (Files.isDirectory(location)) {
+                    try (Stream<Path> stream = Files.walk(location)) {
+                        stream.filter(Files::isRegularFile).sorted().forEach(files::add);
+                    }
+                } else {
+                    files.add(location);
+                }
+                for (Path file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+                StringBuilder sb = new StringBuilder();
+                for (byte b : Arrays.copyOf(digest.digest(), 8)) {
+                    sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                }
+                return sb.toString();
+            } catch (IOException | URISyntaxException | NoSuchAlgorithmException | RuntimeException e) {
+                System.err.println("jbit: unable to compute the build digest: " + e);
+                return "unknown";
+            }
+        }
     }
 
     /**
@@ -67,25 +178,111 @@ public class Translator {
         return TRANSLATOR.doTransform(classData);
     }
 
+    /**
+     * Translates a class, resolving the super classes needed to compute frames
+     * with the given hierarchy instead of loading classes.
+     */
+    public static byte[] transform(byte[] classData, ClassHierarchy hierarchy) {
+        return TRANSLATOR.doTransform(classData, hierarchy);
+    }
+
+    /**
+     * Translates a class, notifying the given listener of each rewritten call site.
+     */
+    public static byte[] transform(byte[] classData, ClassHierarchy hierarchy, TranslationListener listener) {
+        return TRANSLATOR.doTransform(classData, hierarchy, listener);
+    }
+
     public static byte[] transform(InputStream input) throws IOException {
         return TRANSLATOR.doTransform(input);
     }
 
+    /**
+     * Translates the given class.
+     * If the class does not need any translation, the given array is returned as is,
+     * or a copy with only the class version changed if the class targets a JDK newer than 8.
+     */
     public byte[] doTransform(byte[] classData) {
+        return doTransform(classData, null);
+    }
+
+    /**
+     * Translates the given class, using the given class hierarchy, if not <code>null</code>,
+     * to compute frames without loading any class.
+     */
+    public byte[] doTransform(byte[] classData, ClassHierarchy hierarchy) {
+        return doTransform(classData, hierarchy, null);
+    }
+
+    /**
+     * Translates the given class, notifying the given listener, if not <code>null</code>,
+     * of each rewritten call site.
+     */
+    public byte[] doTransform(byte[] classData, ClassHierarchy hierarchy, TranslationListener listener) {
+        int major = ((classData[6] & 0xFF) << 8) | (classData[7] & 0xFF);
+        if (major <= Opcodes.V1_8 && !force) {
+            return classData;
+        }
         ClassReader reader = new ClassReader(classData);
-        return doTransform(reader);
+        ClassScanner scanner = new ClassScanner(reader, substitutions, STRING_CONCAT_FACTORY);
+        int translation = scanner.getTranslation();
+        if (translation != ClassScanner.NO_TRANSLATION) {
+            // Classes older than JDK 7 may not have any frame, which are mandatory once upgraded to JDK 8
+            boolean computeFrames = translation == ClassScanner.COMPUTE_FRAMES || !preserveFrames || major < Opcodes.V1_7;
+            return doTransform(reader, scanner, computeFrames, hierarchy, listener);
+        }
+        if (major <= Opcodes.V1_8) {
+            return classData;
+        }
+        byte[] data = classData.clone();
+        data[4] = 0;
+        data[5] = 0;
+        data[6] = (byte) (Opcodes.V1_8 >>> 8);
+        data[7] = (byte) Opcodes.V1_8;
+        return data;
     }
 
     public byte[] doTransform(InputStream input) throws IOException {
-        ClassReader reader = new ClassReader(input);
-        return doTransform(reader);
+        return doTransform(readAllBytes(input));
     }
 
-    private byte[] doTransform(ClassReader reader) {
+    private static byte[] readAllBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer, 0, buffer.length)) >= 0) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+    private byte[] doTransform(ClassReader reader, ClassScanner scanner, boolean computeFrames, ClassHierarchy hierarchy,
+                               TranslationListener listener) {
         Collection<String> classes = new ArrayList<>();
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        // Seeding the writer with the reader copies the constant pool, and lets ASM copy
+        // verbatim the methods for which the writer's own MethodVisitor is returned
+        // Counting calls only adds straight-line code, which needs a larger stack but keeps the frames valid
+        int flags = computeFrames ? ClassWriter.COMPUTE_FRAMES : countCalls ? ClassWriter.COMPUTE_MAXS : 0;
+        if (computeFrames && listener != null) {
+            listener.framesComputed(reader.getClassName());
+        }
+        ClassWriter writer;
+        if (computeFrames && hierarchy != null) {
+            hierarchy.add(reader.getClassName(), reader.getSuperName(), reader.getAccess());
+            writer = new ClassWriter(reader, flags) {
+                @Override
+                protected String getCommonSuperClass(String type1, String type2) {
+                    return hierarchy.getCommonSuperClass(type1, type2);
+                }
+            };
+        } else {
+            writer = new ClassWriter(reader, flags);
+        }
         ClassVisitor visitor = new ClassVisitor(Opcodes.ASM8, writer) {
             int version;
+            int methodIndex;
+            // Names of the synthetic concat methods, by descriptor and elements
+            final Map<List<Object>, String> concatMethods = new LinkedHashMap<>();
             @Override
             public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
                 super.visit(Opcodes.V1_8, access, name, signature, superName, interfaces);
@@ -102,11 +299,21 @@ public class Translator {
 
             @Override
             public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-                if (version <= Opcodes.V1_8 && !force) {
-                    return super.visitMethod(access, name, descriptor, signature, exceptions);
+                boolean rewritten = scanner.isMethodRewritten(methodIndex++);
+                if (version <= Opcodes.V1_8 && !force || !rewritten) {
+                    MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+                    // Methods of classes older than JDK 7 may lack frames, so they can not be copied verbatim
+                    return version < Opcodes.V1_7 ? new MethodVisitor(Opcodes.ASM8, mv) { } : mv;
                 }
                 MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+                String caller = reader.getClassName().replace('/', '.') + "." + name;
                 return new MethodVisitor(Opcodes.ASM8, mv) {
+                    int line = -1;
+                    @Override
+                    public void visitLineNumber(int line, Label start) {
+                        super.visitLineNumber(line, start);
+                        this.line = line;
+                    }
                     @Override
                     public void visitMethodInsn(
                             final int opcode,
@@ -114,10 +321,22 @@ public class Translator {
                             final String name,
                             final String descriptor,
                             final boolean isInterface) {
-                        Substitution substitution = substitutions.stream()
-                                .filter(s -> s.matches(owner, name, descriptor))
-                                .findAny().orElse(null);
+                        Substitution substitution = substitutions.find(owner, name, descriptor);
                         if (substitution != null) {
+                            if (listener != null) {
+                                listener.rewritten(owner, name, descriptor);
+                            }
+                            if (countCalls) {
+                                int id = CallSiteCounters.register(owner + "." + name + descriptor, line >= 0 ? caller + ":" + line : caller);
+                                // counts[id]++
+                                super.visitFieldInsn(Opcodes.GETSTATIC, CALL_SITE_COUNTERS, "counts", "[J");
+                                super.visitLdcInsn(id);
+                                super.visitInsn(Opcodes.DUP2);
+                                super.visitInsn(Opcodes.LALOAD);
+                                super.visitInsn(Opcodes.LCONST_1);
+                                super.visitInsn(Opcodes.LADD);
+                                super.visitInsn(Opcodes.LASTORE);
+                            }
                             super.visitMethodInsn(Opcodes.INVOKESTATIC, substitution.newOwner, substitution.newName, substitution.newDescriptor, false);
                         } else {
                             super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
@@ -126,6 +345,16 @@ public class Translator {
                     @Override
                     public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
                         if (STRING_CONCAT_FACTORY.equals(bootstrapMethodHandle.getOwner())) {
+                            if (listener != null) {
+                                listener.rewritten(bootstrapMethodHandle.getOwner(), bootstrapMethodHandle.getName(), bootstrapMethodHandle.getDesc());
+                            }
+                            List<Object> elements = inlineConcat ? parseConcat(descriptor, bootstrapMethodHandle, bootstrapMethodArguments) : null;
+                            if (elements != null) {
+                                // Same stack effect as the indy call, so the frames are kept unchanged
+                                super.visitMethodInsn(Opcodes.INVOKESTATIC, reader.getClassName(), getConcatMethod(descriptor, elements),
+                                        descriptor, (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+                                return;
+                            }
                             super.visitInvokeDynamicInsn(name, descriptor,
                                     new Handle(bootstrapMethodHandle.getTag(), StringConcatFactory.class.getName().replace('.', '/'),
                                             bootstrapMethodHandle.getName(), bootstrapMethodHandle.getDesc(), bootstrapMethodHandle.isInterface()),
@@ -136,8 +365,107 @@ public class Translator {
                     }
                 };
             }
+
+            @Override
+            public void visitEnd() {
+                for (Map.Entry<List<Object>, String> method : concatMethods.entrySet()) {
+                    String descriptor = (String) method.getKey().get(0);
+                    // Private static methods are allowed in JDK 8 interfaces, javac uses them for lambdas
+                    MethodVisitor mv = super.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                            method.getValue(), descriptor, null, null);
+                    @SuppressWarnings("unchecked")
+                    List<Object> elements = (List<Object>) method.getKey().get(1);
+                    StringConcatGenerator.generate(mv, descriptor, elements);
+                }
+                super.visitEnd();
+            }
+
+            String getConcatMethod(String descriptor, List<Object> elements) {
+                String name = "jbit$concat$" + concatMethods.size();
+                String existing = concatMethods.putIfAbsent(Arrays.asList(descriptor, elements), name);
+                return existing != null ? existing : name;
+            }
         };
-        reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+        reader.accept(visitor, computeFrames ? ClassReader.EXPAND_FRAMES : 0);
         return writer.toByteArray();
     }
+
+    /**
+     * Returns the elements of a string concatenation, or <code>null</code> if some constants can not be
+     * converted to strings at translation time.
+     */
+    private static List<Object> parseConcat(String descriptor, Handle bootstrapMethodHandle, Object[] bootstrapMethodArguments) {
+        if ("makeConcat".equals(bootstrapMethodHandle.getName())) {
+            return StringConcatGenerator.arguments(Type.getArgumentTypes(descriptor).length);
+        }
+        if (!"makeConcatWithConstants".equals(bootstrapMethodHandle.getName()) || bootstrapMethodArguments.length == 0
+                || !(bootstrapMethodArguments[0] instanceof String)) {
+            return null;
+        }
+        Object[] constants = Arrays.copyOfRange(bootstrapMethodArguments, 1, bootstrapMethodArguments.length);
+        for (Object constant : constants) {
+            // Class, method handle and dynamic constants only exist at runtime
+            if (!(constant instanceof String || constant instanceof Number)) {
+                return null;
+            }
+        }
+        return StringConcatGenerator.parse((String) bootstrapMethodArguments[0], constants);
+    }
+
+    public static final class Builder {
+        private SubstitutionIndex substitutions = SUBSTITUTION_INDEX;
+        private boolean force;
+        private boolean preserveFrames = true;
+        private boolean countCalls;
+        private boolean inlineConcat;
+
+        private Builder() {
+        }
+
+        public Builder substitutions(SubstitutionIndex substitutions) {
+            this.substitutions = substitutions;
+            return this;
+        }
+
+        /**
+         * Translates classes targeting JDK 8 or older too.
+         */
+        public Builder force(boolean force) {
+            this.force = force;
+            return this;
+        }
+
+        /**
+         * Keeps the existing stack map frames when all the rewrites applied to a class leave the stack
+         * shape unchanged, instead of always recomputing them. Enabled by default.
+         */
+        public Builder preserveFrames(boolean preserveFrames) {
+            this.preserveFrames = preserveFrames;
+            return this;
+        }
+
+        /**
+         * Registers each rewritten call site in {@link CallSiteCounters} and makes it increment its counter
+         * when called. The translated classes must be loaded in the translating JVM.
+         */
+        public Builder countCalls(boolean countCalls) {
+            this.countCalls = countCalls;
+            return this;
+        }
+
+        /**
+         * Replaces the string concatenations by calls to synthetic methods of the translated class appending
+         * to a <code>StringBuilder</code>, instead of linking them at runtime with the
+         * {@link StringConcatFactory} backport.
+         */
+        public Builder inlineConcat(boolean inlineConcat) {
+            this.inlineConcat = inlineConcat;
+            return this;
+        }
+
+        public Translator build() {
+            return new Translator(this);
+        }
+    }
+
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RawZipTest {
+
+    static final byte[] STORED_DATA = "stored content".getBytes(StandardCharsets.UTF_8);
+    static final byte[] DEFLATED_DATA = repeat("deflated content ", 100);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testCopyRaw() throws IOException {
+        Path source = dir.resolve("source.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(source))) {
+            zos.putNextEntry(new ZipEntry("dir/"));
+            ZipEntry stored = new ZipEntry("dir/stored.txt");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(STORED_DATA.length);
+            stored.setCrc(crc(STORED_DATA));
+            zos.putNextEntry(stored);
+            zos.write(STORED_DATA);
+            // Deflated entries are written with a data descriptor
+            zos.putNextEntry(new ZipEntry("dir/deflated.txt"));
+            zos.write(DEFLATED_DATA);
+        }
+        Path target = copy(source);
+
+        try (RawZipReader reader = new RawZipReader(target)) {
+            assertEquals(3, reader.entries().size());
+            assertEquals(RawZipEntry.STORED, reader.getEntry("dir/stored.txt").method);
+            assertEquals(RawZipEntry.DEFLATED, reader.getEntry("dir/deflated.txt").method);
+            assertEquals(0, reader.getEntry("dir/deflated.txt").flags & 0x8);
+            assertArrayEquals(DEFLATED_DATA, reader.read(reader.getEntry("dir/deflated.txt")));
+        }
+        try (ZipFile zip = new ZipFile(target.toFile())) {
+            assertArrayEquals(STORED_DATA, readAll(zip.getInputStream(zip.getEntry("dir/stored.txt"))));
+            assertArrayEquals(DEFLATED_DATA, readAll(zip.getInputStream(zip.getEntry("dir/deflated.txt"))));
+        }
+        // Streaming readers rely on the sizes of the local headers
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(target))) {
+            assertEquals("dir/", zis.getNextEntry().getName());
+            assertEquals("dir/stored.txt", zis.getNextEntry().getName());
+            assertArrayEquals(STORED_DATA, readAll(zis));
+            assertEquals("dir/deflated.txt", zis.getNextEntry().getName());
+            assertArrayEquals(DEFLATED_DATA, readAll(zis));
+            assertNull(zis.getNextEntry());
+        }
+    }
+
+    @Test
+    public void testCopyZip64Extra() throws IOException {
+        byte[] name = "zip64.txt".getBytes(StandardCharsets.UTF_8);
+        byte[] other = { (byte) 0xFE, (byte) 0xCA, 2, 0, 1, 2 };
+        ByteBuffer zip64 = buffer(20).putShort((short) 1).putShort((short) 16)
+                .putLong(STORED_DATA.length).putLong(STORED_DATA.length);
+        ByteBuffer buf = buffer(512);
+        buf.putInt(RawZipReader.LOCAL_HEADER_SIG).putShort((short) 45).putShort((short) 0).putShort((short) 0)
+                .putInt(0).putInt((int) crc(STORED_DATA)).putInt(-1).putInt(-1)
+                .putShort((short) name.length).putShort((short) 20).put(name).put(zip64.array()).put(STORED_DATA);
+        int cdOffset = buf.position();
+        buf.putInt(RawZipReader.CENTRAL_HEADER_SIG).putShort((short) 45).putShort((short) 45).putShort((short) 0)
+                .putShort((short) 0).putInt(0).putInt((int) crc(STORED_DATA)).putInt(-1).putInt(-1)
+                .putShort((short) name.length).putShort((short) (20 + other.length)).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt(0)
+                .put(name).put(zip64.array()).put(other);
+        int cdSize = buf.position() - cdOffset;
+        buf.putInt(RawZipReader.END_SIG).putShort((short) 0).putShort((short) 0).putShort((short) 1).putShort((short) 1)
+                .putInt(cdSize).putInt(cdOffset).putShort((short) 0);
+        Path source = dir.resolve("source.zip");
+        Files.write(source, Arrays.copyOf(buf.array(), buf.position()));
+
+        try (RawZipReader reader = new RawZipReader(source)) {
+            RawZipEntry entry = reader.getEntry("zip64.txt");
+            assertEquals(STORED_DATA.length, entry.size);
+            assertEquals(STORED_DATA.length, entry.compressedSize);
+        }
+        Path target = copy(source);
+
+        try (RawZipReader reader = new RawZipReader(target)) {
+            // The zip64 field is only written back when needed, other fields are kept
+            assertArrayEquals(other, reader.getEntry("zip64.txt").extra);
+        }
+        try (ZipFile zip = new ZipFile(target.toFile())) {
+            assertArrayEquals(STORED_DATA, readAll(zip.getInputStream(zip.getEntry("zip64.txt"))));
+        }
+    }
+
+    private Path copy(Path source) throws IOException {
+        Path target = dir.resolve("target.zip");
+        try (RawZipReader reader = new RawZipReader(source);
+             RawZipWriter writer = new RawZipWriter(Files.newOutputStream(target), RawZipWriter.STORED_LEVEL)) {
+            for (RawZipEntry entry : reader.entries()) {
+                writer.copyRaw(reader, entry);
+            }
+        }
+        return target;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static byte[] repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = is.read(buf)) > 0) {
+            baos.write(buf, 0, n);
+        }
+        return baos.toByteArray();
+    }
+
+}
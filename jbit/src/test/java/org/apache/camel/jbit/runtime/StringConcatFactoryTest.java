@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StringConcatFactoryTest {
+
+    static final MethodType TYPE = MethodType.methodType(String.class,
+            boolean.class, char.class, int.class, long.class, double.class, String.class, Object.class, char[].class);
+    static final String RECIPE = "z=\u0001 c=\u0001 i=\u0001 l=\u0001 d=\u0001 s=\u0001 o=\u0001 a=\u0001\u0002";
+
+    @Test
+    public void testTieredCallSite() throws Throwable {
+        CallSite callSite = StringConcatFactory.makeConcatWithConstants(MethodHandles.lookup(), "concat", TYPE, RECIPE, 42);
+        assertTrue(callSite instanceof StringConcatFactory.TieredCallSite);
+        MethodHandle invoker = callSite.dynamicInvoker();
+        MethodHandle generic = callSite.getTarget();
+        char[] chars = { 'x' };
+        for (int i = 1; i < StringConcatFactory.TIERED_THRESHOLD; i++) {
+            assertConcat(invoker, chars, i);
+        }
+        assertSame(generic, callSite.getTarget());
+        // This call reaches the threshold and relinks the call site to a generated class
+        assertConcat(invoker, chars, -1);
+        assertNotSame(generic, callSite.getTarget());
+        for (int i = 0; i < 10; i++) {
+            assertConcat(invoker, null, i);
+        }
+    }
+
+    private static void assertConcat(MethodHandle invoker, char[] chars, int i) throws Throwable {
+        boolean z = i % 2 == 0;
+        char c = (char) ('a' + i % 26);
+        long l = Long.MIN_VALUE + i;
+        double d = i / 3.0;
+        String s = i % 3 == 0 ? null : "s" + i;
+        Object o = i % 5 == 0 ? null : Integer.valueOf(i);
+        String expected = "z=" + z + " c=" + c + " i=" + i + " l=" + l + " d=" + d + " s=" + s + " o=" + o
+                + " a=" + String.valueOf((Object) chars) + 42;
+        assertEquals(expected, (String) invoker.invokeExact(z, c, i, l, d, s, o, chars));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translator;
+
+import org.apache.camel.jbit.translate.ClassHierarchy;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClassHierarchyTest {
+
+    static class Base {
+    }
+
+    static class Left extends Base {
+    }
+
+    static class Right extends Base {
+    }
+
+    static class LeftChild extends Left {
+    }
+
+    /**
+     * Exposes the default implementation of ASM, which loads the classes.
+     */
+    static class LoadingClassWriter extends ClassWriter {
+        LoadingClassWriter() {
+            super(0);
+        }
+
+        @Override
+        public String getCommonSuperClass(String type1, String type2) {
+            return super.getCommonSuperClass(type1, type2);
+        }
+    }
+
+    final ClassHierarchy hierarchy = new ClassHierarchy(ClassHierarchy.jdk(), ClassHierarchy.forClassLoader(getClass().getClassLoader()));
+    final LoadingClassWriter writer = new LoadingClassWriter();
+
+    @Test
+    public void testClasses() {
+        String[][] pairs = {
+                { "java/lang/Integer", "java/lang/Long" },
+                { "java/lang/String", "java/lang/Integer" },
+                { "java/util/ArrayList", "java/util/LinkedList" },
+                { "java/util/ArrayList", "java/util/AbstractList" },
+                { "java/io/FileInputStream", "java/io/ByteArrayInputStream" },
+                { "java/lang/NumberFormatException", "java/lang/IllegalArgumentException" },
+                { "java/lang/IllegalStateException", "java/lang/NumberFormatException" },
+                { "java/lang/Object", "java/lang/String" },
+                { name(Left.class), name(Right.class) },
+                { name(LeftChild.class), name(Right.class) },
+                { name(LeftChild.class), name(Left.class) },
+                { name(Base.class), name(LeftChild.class) },
+                { name(LeftChild.class), "java/lang/Exception" },
+                { "java/lang/Runnable", "java/lang/String" },
+                { "java/util/List", "java/util/Set" },
+        };
+        for (String[] pair : pairs) {
+            assertEquals(writer.getCommonSuperClass(pair[0], pair[1]), hierarchy.getCommonSuperClass(pair[0], pair[1]),
+                    pair[0] + " / " + pair[1]);
+            assertEquals(writer.getCommonSuperClass(pair[1], pair[0]), hierarchy.getCommonSuperClass(pair[1], pair[0]),
+                    pair[1] + " / " + pair[0]);
+        }
+    }
+
+    @Test
+    public void testInterfaces() {
+        // ASM returns the interface when it is implemented, which the verifier handles as Object anyway
+        assertEquals("java/util/List", writer.getCommonSuperClass("java/util/List", "java/util/ArrayList"));
+        assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("java/util/List", "java/util/ArrayList"));
+    }
+
+    @Test
+    public void testMissingTypes() {
+        assertThrows(TypeNotPresentException.class, () -> writer.getCommonSuperClass("does/not/Exist", "java/lang/String"));
+        assertThrows(TypeNotPresentException.class, () -> hierarchy.getCommonSuperClass("does/not/Exist", "java/lang/String"));
+        assertThrows(TypeNotPresentException.class, () -> hierarchy.getCommonSuperClass("java/lang/String", "does/not/Exist"));
+        // A known class with a missing super class
+        hierarchy.add("does/not/Sub", "does/not/Exist", Opcodes.ACC_PUBLIC);
+        assertThrows(TypeNotPresentException.class, () -> hierarchy.getCommonSuperClass("does/not/Sub", "java/lang/String"));
+        assertThrows(TypeNotPresentException.class, () -> hierarchy.getCommonSuperClass("java/lang/Integer", "does/not/Sub"));
+    }
+
+    private static String name(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+}
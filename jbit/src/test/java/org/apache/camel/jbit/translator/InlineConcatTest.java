@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translator;
+
+import java.lang.reflect.Method;
+
+import org.apache.camel.jbit.translate.Translator;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Compares inlined string concatenations with the concatenations linked by the JDK.
+ */
+public class InlineConcatTest {
+
+    static final String NAME = "org/apache/camel/jbit/translator/ConcatSample";
+    static final String ALL = "(ZCBSIJFDLjava/lang/Object;Ljava/lang/String;[C)Ljava/lang/String;";
+    static final Handle BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory",
+            "makeConcatWithConstants",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    @Test
+    public void testInlineConcat() throws Exception {
+        byte[] original = generate();
+        byte[] translated = Translator.builder().inlineConcat(true).build().doTransform(original);
+        assertFalse(hasInvokeDynamic(translated));
+        Class<?> indy = define(original);
+        Class<?> inline = define(translated);
+
+        char[] chars = { 'a', 'b' };
+        Object[][] values = {
+                { true, 'c', (byte) 1, (short) 2, 3, 4L, 5.5f, 6.25d, "object", "string", chars },
+                { false, '\u00e9', Byte.MIN_VALUE, Short.MIN_VALUE, Integer.MIN_VALUE, Long.MIN_VALUE,
+                        -Float.MIN_NORMAL, -Double.MIN_NORMAL, null, null, null },
+                { true, '\u0001', Byte.MAX_VALUE, Short.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE,
+                        Float.NaN, Double.NEGATIVE_INFINITY, new StringBuilder("builder"), "", chars },
+        };
+        for (Object[] args : values) {
+            assertSame(indy, inline, "all", args);
+            assertSame(indy, inline, "args", args);
+        }
+        for (Object[] args : new Object[][] { { 0, null }, { -7, "x" } }) {
+            assertSame(indy, inline, "constants", args);
+        }
+        assertSame(indy, inline, "empty");
+        assertSame(indy, inline, "literal");
+    }
+
+    private static void assertSame(Class<?> indy, Class<?> inline, String name, Object... args) throws Exception {
+        Method expected = find(indy, name);
+        Method actual = find(inline, name);
+        assertEquals(expected.invoke(null, args), actual.invoke(null, args), name);
+    }
+
+    private static boolean hasInvokeDynamic(byte[] data) {
+        boolean[] found = new boolean[1];
+        new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM8) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM8) {
+                    @Override
+                    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                        found[0] = true;
+                    }
+                };
+            }
+        }, 0);
+        return found[0];
+    }
+
+    private static Method find(Class<?> clazz, String name) {
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Class<?> define(byte[] data) {
+        return new ClassLoader(InlineConcatTest.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(NAME.replace('/', '.'), data, 0, data.length);
+            }
+        }.define();
+    }
+
+    /**
+     * Generates a JDK 11 class whose methods concatenate strings with invokedynamic, as javac does.
+     */
+    private static byte[] generate() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, NAME, null, "java/lang/Object", null);
+        // Every primitive, with literal text between the arguments
+        concat(cw, "all", ALL, "z=\u0001 c=\u0001 b=\u0001 s=\u0001 i=\u0001 l=\u0001 f=\u0001 d=\u0001 o=\u0001 str=\u0001 chars=\u0001!");
+        // Arguments only
+        concat(cw, "args", ALL, "\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001");
+        // Constants, including tag characters which must be kept as is
+        concat(cw, "constants", "(ILjava/lang/String;)Ljava/lang/String;", "\u0002[\u0001]\u0002\u0001\u0002",
+                "\u0001const\u0002", 42, "-\u0002-");
+        concat(cw, "empty", "()Ljava/lang/String;", "");
+        concat(cw, "literal", "()Ljava/lang/String;", "text\u0002", 1.5d);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void concat(ClassWriter cw, String name, String descriptor, String recipe, Object... constants) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, descriptor, null, null);
+        mv.visitCode();
+        int local = 0;
+        for (Type arg : Type.getArgumentTypes(descriptor)) {
+            mv.visitVarInsn(arg.getOpcode(Opcodes.ILOAD), local);
+            local += arg.getSize();
+        }
+        Object[] bsmArgs = new Object[constants.length + 1];
+        bsmArgs[0] = recipe;
+        System.arraycopy(constants, 0, bsmArgs, 1, constants.length);
+        mv.visitInvokeDynamicInsn("makeConcatWithConstants", descriptor, BOOTSTRAP, bsmArgs);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.translator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.camel.jbit.translate.Substitution;
+import org.apache.camel.jbit.translate.SubstitutionTable;
+import org.apache.camel.jbit.translate.Translator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SubstitutionTableTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Substitution> substitutions = Substitution.findSubstitutions(Translator.SUBSTITUTION_CLASSES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SubstitutionTable.write(substitutions, out);
+        List<Substitution> read = SubstitutionTable.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(substitutions.size(), read.size());
+        assertEquals(Substitution.fingerprint(substitutions), Substitution.fingerprint(read));
+    }
+
+    @Test
+    public void testCorruptTable() throws Exception {
+        List<Substitution> substitutions = Substitution.findSubstitutions(Translator.SUBSTITUTION_CLASSES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SubstitutionTable.write(substitutions, out);
+        byte[] table = out.toByteArray();
+        // The last int is the pool index of the new descriptor of the last substitution
+        table[table.length - 4] = (byte) 0x7F;
+        assertThrows(IOException.class, () -> SubstitutionTable.read(new ByteArrayInputStream(table)));
+        assertThrows(IOException.class, () -> SubstitutionTable.read(new ByteArrayInputStream(table, 0, table.length / 2)));
+    }
+
+    @Test
+    public void testGeneratedTable() throws Exception {
+        try (InputStream in = SubstitutionTable.class.getResourceAsStream("/" + SubstitutionTable.RESOURCE)) {
+            assertNotNull(in, "The build must generate " + SubstitutionTable.RESOURCE);
+        }
+        // The table generated by the build must match the runtime classes
+        assertEquals(Substitution.fingerprint(Substitution.findSubstitutions(Translator.SUBSTITUTION_CLASSES)),
+                Substitution.fingerprint(SubstitutionTable.load(Translator.SUBSTITUTION_CLASSES)));
+    }
+
+}
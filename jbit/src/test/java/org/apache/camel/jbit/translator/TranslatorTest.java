@@ -24,8 +24,14 @@ import org.apache.camel.jbit.runtime.Substitute;
 import org.apache.camel.jbit.translate.Substitution;
 import org.apache.camel.jbit.translate.Translator;
 import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 public class TranslatorTest {
 
@@ -100,4 +106,55 @@ public class TranslatorTest {
         Object id2 = c.getMethod("getId2").invoke(o);
         assertEquals(2, id2);
     }
+
+    @Test
+    public void testUnchanged() throws Exception {
+        Translator translator = new Translator(Substitution.findSubstitutions(Arrays.asList(TranslatorTest.class)), true);
+        byte[] data;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(MyClass.class.getName().replace('.', '/') + ".class")) {
+            data = new byte[is.available()];
+            assertEquals(data.length, is.read(data));
+        }
+        assertSame(data, translator.doTransform(data));
+    }
+
+    @Test
+    public void testForcedOldClass() throws Exception {
+        // A JDK 6 class without frames, with a branch in a method which is not rewritten
+        String name = "org/apache/camel/jbit/translator/OldClass";
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "abs", "(I)I", null, null);
+        mv.visitCode();
+        Label positive = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFGE, positive);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.INEG);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(positive);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "getId2", "()I", null, null);
+        mv.visitCode();
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MyClass.class), "getId2", "()I", false);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        Translator translator = new Translator(Substitution.findSubstitutions(Arrays.asList(TranslatorTest.class)), true);
+        byte[] data = translator.doTransform(cw.toByteArray());
+        Class<?> c = new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass(name.replace('/', '.'), data, 0, data.length);
+            }
+        }.define();
+        // Linking verifies the upgraded class, which fails if a method has been copied without frames
+        assertEquals(3, c.getMethod("abs", int.class).invoke(null, -3));
+        assertEquals(2, c.getMethod("getId2").invoke(null));
+    }
+
 }
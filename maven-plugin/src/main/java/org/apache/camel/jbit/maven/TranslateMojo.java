@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.jbit.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.apache.camel.jbit.JarTranslator;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+/**
+ * Translates the project artifact, and optionally its runtime dependencies, into JDK 8 compatible jars.
+ * <p>
+ * The project artifact is translated incrementally. Translated dependencies are cached in the local
+ * repository, keyed by the checksum of the original jar and the jbit fingerprint, so that each
+ * third-party jar is only translated once across builds and modules. The jars in which stack map
+ * frames had to be computed depend on the classpath, and are also keyed by a digest of the classpath.
+ */
+@Mojo(name = "translate", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class TranslateMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Component
+    private MavenProjectHelper projectHelper;
+
+    @Parameter(property = "jbit.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Parameter(property = "jbit.outputFile", defaultValue = "${project.build.directory}/${project.build.finalName}-jdk8.jar")
+    private File outputFile;
+
+    /**
+     * Attaches the translated jar to the project with this classifier, if set.
+     */
+    @Parameter(property = "jbit.classifier")
+    private String classifier;
+
+    @Parameter(property = "jbit.translateDependencies", defaultValue = "false")
+    private boolean translateDependencies;
+
+    /**
+     * Directory receiving the translated dependencies, under their original file names, prefixed by
+     * their group id when several dependencies have the same file name.
+     */
+    @Parameter(property = "jbit.dependenciesDirectory", defaultValue = "${project.build.directory}/jdk8-lib")
+    private File dependenciesDirectory;
+
+    /**
+     * Translates string concatenations into <code>StringBuilder</code> code, so that the translated jars
+     * do not need ASM at runtime.
+     */
+    @Parameter(property = "jbit.inlineConcat", defaultValue = "false")
+    private boolean inlineConcat;
+
+    @Parameter(property = "jbit.threads")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Directory containing the translated dependencies, shared by all the builds using the same local repository.
+     */
+    @Parameter(property = "jbit.cacheDirectory", defaultValue = "${settings.localRepository}/.cache/jbit")
+    private File cacheDirectory;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping jbit translation");
+            return;
+        }
+        File artifactFile = project.getArtifact().getFile();
+        if (artifactFile == null || !artifactFile.isFile()) {
+            throw new MojoExecutionException("No project artifact to translate, the jar must be packaged first");
+        }
+        List<Artifact> dependencies = new ArrayList<>();
+        List<Path> classpath = new ArrayList<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            if (artifact.getFile() != null && artifact.getFile().getName().endsWith(".jar")
+                    && (Artifact.SCOPE_COMPILE.equals(artifact.getScope()) || Artifact.SCOPE_RUNTIME.equals(artifact.getScope()))) {
+                dependencies.add(artifact);
+                classpath.add(artifact.getFile().toPath());
+            }
+        }
+        try {
+            JarTranslator translator = new JarTranslator()
+                    .setThreads(Math.max(1, threads))
+                    .setIncremental(true)
+                    .setInlineConcat(inlineConcat)
+                    .setClasspath(classpath);
+            getLog().info("Translating " + artifactFile.getName() + " to " + outputFile.getName());
+            Files.createDirectories(outputFile.toPath().getParent());
+            translator.translate(artifactFile.toPath(), outputFile.toPath());
+            if (classifier != null && !classifier.isEmpty()) {
+                projectHelper.attachArtifact(project, "jar", classifier, outputFile);
+            }
+            if (translateDependencies) {
+                translateDependencies(dependencies, classpath);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to translate " + artifactFile, e);
+        }
+    }
+
+    private void translateDependencies(List<Artifact> dependencies, List<Path> classpath) throws IOException, MojoExecutionException {
+        JarTranslator translator = new JarTranslator()
+                .setThreads(Math.max(1, threads))
+                .setInlineConcat(inlineConcat)
+                .setClasspath(classpath);
+        Map<Path, String> checksums = new LinkedHashMap<>();
+        for (Path jar : classpath) {
+            checksums.put(jar, checksum(jar));
+        }
+        String classpathDigest = classpathDigest(checksums.values());
+        Map<Path, CachedJar> cached = new LinkedHashMap<>();
+        List<Path> missing = new ArrayList<>();
+        for (Artifact artifact : dependencies) {
+            Path jar = artifact.getFile().toPath();
+            CachedJar cachedJar = new CachedJar(cacheDirectory.toPath()
+                    .resolve(artifact.getGroupId().replace('.', '/'))
+                    .resolve(artifact.getArtifactId()),
+                    checksums.get(jar) + "-" + translator.getFingerprint(), classpathDigest);
+            cached.put(jar, cachedJar);
+            if (!Files.isRegularFile(cachedJar.path())) {
+                missing.add(jar);
+            }
+        }
+        getLog().info("Translating " + missing.size() + " dependencies, " + (cached.size() - missing.size()) + " found in cache");
+        if (!missing.isEmpty()) {
+            translateMissing(translator, missing, cached);
+        }
+
+        Path directory = dependenciesDirectory.toPath();
+        Files.createDirectories(directory);
+        for (Map.Entry<Artifact, String> entry : targetNames(dependencies).entrySet()) {
+            Path source = cached.get(entry.getKey().getFile().toPath()).path();
+            Path target = directory.resolve(entry.getValue());
+            if (!Files.isRegularFile(target) || Files.size(target) != Files.size(source)
+                    || Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(source)) < 0) {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    /**
+     * Returns the file names of the translated dependencies, which are the original file names
+     * prefixed by the group id when several dependencies have the same file name.
+     */
+    private static Map<Artifact, String> targetNames(List<Artifact> dependencies) throws MojoExecutionException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Artifact artifact : dependencies) {
+            counts.merge(artifact.getFile().getName(), 1, Integer::sum);
+        }
+        Map<Artifact, String> names = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+        for (Artifact artifact : dependencies) {
+            String name = artifact.getFile().getName();
+            if (counts.get(name) > 1) {
+                name = artifact.getGroupId() + "-" + name;
+            }
+            if (!used.add(name)) {
+                throw new MojoExecutionException("Several dependencies would be translated to " + name);
+            }
+            names.put(artifact, name);
+        }
+        return names;
+    }
+
+    /**
+     * Translates the given jars in batches of distinct file names, then moves them into the cache.
+     */
+    private void translateMissing(JarTranslator translator, List<Path> missing, Map<Path, CachedJar> cached) throws IOException {
+        Path buildDirectory = Files.createDirectories(new File(project.getBuild().getDirectory()).toPath());
+        Path temp = Files.createTempDirectory(buildDirectory, "jbit");
+        Set<Path> framesComputed = ConcurrentHashMap.newKeySet();
+        translator.setFramesComputedListener(framesComputed::add);
+        try {
+            List<Path> remaining = new ArrayList<>(missing);
+            while (!remaining.isEmpty()) {
+                List<Path> batch = new ArrayList<>();
+                Set<Path> names = new HashSet<>();
+                for (Path jar : remaining) {
+                    if (names.add(jar.getFileName())) {
+                        batch.add(jar);
+                    }
+                }
+                remaining.removeAll(batch);
+                translator.translate(batch, temp);
+                for (Path jar : batch) {
+                    CachedJar entry = cached.get(jar);
+                    if (framesComputed.contains(jar)) {
+                        entry.markFramesComputed();
+                    }
+                    Path cachedJar = entry.path();
+                    Files.createDirectories(cachedJar.getParent());
+                    // Other builds sharing the cache may translate the same jar concurrently
+                    Path tempJar = Files.createTempFile(cachedJar.getParent(), cachedJar.getFileName().toString(), ".tmp");
+                    Files.move(temp.resolve(jar.getFileName()), tempJar, StandardCopyOption.REPLACE_EXISTING);
+                    Files.move(tempJar, cachedJar, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(temp)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(temp);
+        }
+    }
+
+    /**
+     * Location of a translated dependency in the cache. A marker file records that the frames of the
+     * jar are computed, in which case the translated jar is also keyed by the classpath digest.
+     */
+    private static final class CachedJar {
+
+        private final Path jar;
+        private final Path marker;
+        private final Path classpathJar;
+        private boolean framesComputed;
+
+        CachedJar(Path directory, String key, String classpathDigest) {
+            this.jar = directory.resolve(key + ".jar");
+            this.marker = directory.resolve(key + ".frames");
+            this.classpathJar = directory.resolve(key + "-" + classpathDigest + ".jar");
+            this.framesComputed = Files.isRegularFile(marker);
+        }
+
+        Path path() {
+            return framesComputed ? classpathJar : jar;
+        }
+
+        void markFramesComputed() throws IOException {
+            if (!framesComputed) {
+                Files.createDirectories(marker.getParent());
+                Files.write(marker, new byte[0]);
+                framesComputed = true;
+            }
+        }
+    }
+
+    private static String checksum(Path file) throws IOException {
+        MessageDigest digest = digest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Digests the checksums of the classpath jars, regardless of their order.
+     */
+    private static String classpathDigest(Collection<String> checksums) {
+        MessageDigest digest = digest();
+        for (String checksum : new TreeSet<>(checksums)) {
+            digest.update(checksum.getBytes(StandardCharsets.US_ASCII));
+        }
+        return hex(digest.digest()).substring(0, 16);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+}